@@ -0,0 +1,161 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+import static gitlet.Utils.*;
+
+/** A set of non-negative ints kept as a bitmap of 64-bit words. It is
+ *  stored in the run-length style of EWAH: a series of groups, each a run
+ *  of words that are all zeros or all ones followed by literal words
+ *  copied as they are. The ancestors of a commit are mostly long runs of
+ *  ones, as history is written parent first, so they store in a few bytes
+ *  however long the history. Operations work a word at a time.
+ *
+ *  @author Jeffrey Huang
+ */
+public class Bitmap {
+
+    /** Bits in a word. */
+    private static final int WORD = 64;
+
+    /** A word of all ones. */
+    private static final long ONES = -1L;
+
+    /** The words, lowest bits first; words past the end are zero. */
+    private long[] words;
+
+    /** An empty set. */
+    public Bitmap() {
+        words = new long[0];
+    }
+
+    /** A set of the bits in WORDS. */
+    private Bitmap(long[] words) {
+        this.words = words;
+    }
+
+    /** Returns true if BIT is in the set. */
+    public boolean get(int bit) {
+        int word = bit / WORD;
+        return word < words.length && (words[word] & 1L << bit % WORD) != 0;
+    }
+
+    /** Adds BIT to the set. */
+    public void set(int bit) {
+        int word = bit / WORD;
+        if (word >= words.length) {
+            words = Arrays.copyOf(words, Math.max(word + 1, words.length * 2));
+        }
+        words[word] |= 1L << bit % WORD;
+    }
+
+    /** Adds every member of OTHER to the set. */
+    public void or(Bitmap other) {
+        if (other.words.length > words.length) {
+            words = Arrays.copyOf(words, other.words.length);
+        }
+        for (int i = 0; i < other.words.length; i++) {
+            words[i] |= other.words[i];
+        }
+    }
+
+    /** Removes every member of OTHER from the set. */
+    public void andNot(Bitmap other) {
+        int common = Math.min(words.length, other.words.length);
+        for (int i = 0; i < common; i++) {
+            words[i] &= ~other.words[i];
+        }
+    }
+
+    /** Returns the first member that is at least FROM, or -1 if none is. */
+    public int nextSetBit(int from) {
+        int word = from / WORD;
+        if (word >= words.length) {
+            return -1;
+        }
+        long bits = words[word] & ONES << from % WORD;
+        while (true) {
+            if (bits != 0) {
+                return word * WORD + Long.numberOfTrailingZeros(bits);
+            }
+            word += 1;
+            if (word == words.length) {
+                return -1;
+            }
+            bits = words[word];
+        }
+    }
+
+    /** Returns the number of members. */
+    public int cardinality() {
+        int result = 0;
+        for (long word : words) {
+            result += Long.bitCount(word);
+        }
+        return result;
+    }
+
+    /** Returns the stored form of the set: per group, a varint of the run
+     *  length shifted left once with the run's bit below it, a varint of the
+     *  number of literal words, and the literal words, eight bytes each. */
+    public byte[] encode() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int end = words.length;
+        while (end > 0 && words[end - 1] == 0) {
+            end -= 1;
+        }
+        int i = 0;
+        while (i < end) {
+            long clean = words[i] == ONES ? ONES : 0;
+            int run = 0;
+            while (i + run < end && words[i + run] == clean) {
+                run += 1;
+            }
+            int literals = 0;
+            while (i + run + literals < end && words[i + run + literals] != 0
+                    && words[i + run + literals] != ONES) {
+                literals += 1;
+            }
+            Delta.writeVarint(out, (long) run << 1 | (clean == ONES ? 1 : 0));
+            Delta.writeVarint(out, literals);
+            for (int k = i + run; k < i + run + literals; k++) {
+                for (int b = 0; b < WORD; b += 8) {
+                    out.write((int) (words[k] >>> b));
+                }
+            }
+            i += run + literals;
+        }
+        return out.toByteArray();
+    }
+
+    /** Returns the set whose stored form is DATA. */
+    public static Bitmap decode(byte[] data) {
+        long[] words = new long[0];
+        int size = 0;
+        int[] pos = {0};
+        while (pos[0] < data.length) {
+            int header = Delta.readVarint(data, pos);
+            int run = header >>> 1;
+            int literals = Delta.readVarint(data, pos);
+            if (run < 0 || literals < 0 || data.length - pos[0] < literals * 8L) {
+                throw error("Corrupt bitmap.");
+            }
+            if (size + run + literals > words.length) {
+                words = Arrays.copyOf(words, Math.max(size + run + literals, words.length * 2));
+            }
+            if ((header & 1) == 1) {
+                Arrays.fill(words, size, size + run, ONES);
+            }
+            size += run;
+            for (int k = 0; k < literals; k++) {
+                long word = 0;
+                for (int b = 0; b < WORD; b += 8) {
+                    word |= (data[pos[0]++] & 0xffL) << b;
+                }
+                words[size++] = word;
+            }
+        }
+        return new Bitmap(Arrays.copyOf(words, size));
+    }
+}
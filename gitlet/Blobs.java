@@ -3,42 +3,108 @@ package gitlet;
 import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static gitlet.Utils.*;
 
 /**The saved contents of files. Since Gitlet saves many versions of files,
  * a single file might correspond to multiple blobs: each being tracked in
- * a different commit.*/
+ * a different commit. Commits and the staging area refer to a blob by the
+ * sha1code of its contents. Repositories of format 1 also stored each blob
+ * as a serialized Blobs wrapper; those are read only by the migrate command.*/
 
 public class Blobs implements Serializable {
-    private String blobSHA1code;
+    /** The id older versions computed for this class, so their wrappers
+     *  still read. */
+    private static final long serialVersionUID = -1599613279318142671L;
+
     private String fileSHA1code;
 
     private static File fileDir = join(Repository.OBJECT_DIR, ".fileContents");
 
-    /** Constructor for a blob that makes the variables of contents and blobSHA1code. */
+    /** Threads that write working files at once unless the config says. */
+    private static final int DEFAULT_WORKERS = 8;
+
+    /** Fewest files worth starting threads to write. */
+    private static final int PARALLEL_THRESHOLD = 100;
+
+    /** Constructor for a blob that makes the variables of contents and blobSHA1code.
+     *  The file is read once, through a channel, and hashed while it is
+     *  stored, so adding a file takes a few buffers of memory whatever its
+     *  size and stores its bytes exactly. Its id is recorded in the
+     *  StatCache. */
     public Blobs(String fileName) {
         File fileLook = join(Repository.CWD, fileName);
-        byte[] contents = readContents(fileLook);
-        fileSHA1code = sha1(contents);
-        File newFile = join(fileDir, fileSHA1code);
-        if (!newFile.exists()) {
-            try {
-                newFile.createNewFile();
-            } catch (IOException e) {
-                System.err.println(e);
+        try (FileChannel in = FileChannel.open(fileLook.toPath(), StandardOpenOption.READ)) {
+            long size = in.size();
+            int threshold = Config.getInt(Config.CHUNK_THRESHOLD, 4 * 1024 * 1024);
+            if (threshold > 0 && size > threshold) {
+                fileSHA1code = saveChunks(in);
+            } else {
+                fileSHA1code = ObjectStore.writeFrom(Repository.OBJECT_DIR,
+                        ObjectStore.CONTENTS, in, size);
             }
+        } catch (IOException e) {
+            throw error("Cannot add %s: %s", fileName, e.getMessage());
         }
-        Utils.writeContents(newFile, readContentsAsString(fileLook));
-
+        StatCache.record(fileName, fileSHA1code);
     }
 
-    /** Get blobSHA1code. */
-    public String getBlobSHA1code() {
-        return blobSHA1code;
+    /** Stores the file read from IN as content-defined chunks, each under its
+     *  own sha1code, and a chunk list under the sha1code of the whole file,
+     *  which it returns. Chunks already stored by an earlier version of the
+     *  file are not written again. Only twice the largest chunk is held in
+     *  memory at once. */
+    private static String saveChunks(FileChannel in) throws IOException {
+        MessageDigest whole = ObjectStore.newDigest();
+        List<String> chunkIds = new ArrayList<>();
+        byte[] window = new byte[2 * Chunker.MAX_SIZE];
+        int start = 0;
+        int end = 0;
+        boolean eof = false;
+        while (true) {
+            if (!eof && end - start < Chunker.MAX_SIZE) {
+                System.arraycopy(window, start, window, 0, end - start);
+                end -= start;
+                start = 0;
+                while (!eof && end < window.length) {
+                    int n = in.read(ByteBuffer.wrap(window, end, window.length - end));
+                    if (n < 0) {
+                        eof = true;
+                    } else {
+                        end += n;
+                    }
+                }
+            }
+            if (start == end) {
+                break;
+            }
+            int length = Chunker.cut(window, start, end);
+            byte[] chunk = Arrays.copyOfRange(window, start, start + length);
+            whole.update(chunk);
+            String chunkId = sha1(chunk);
+            ObjectStore.write(Repository.OBJECT_DIR, ObjectStore.CONTENTS, chunkId, chunk);
+            chunkIds.add(chunkId);
+            start += length;
+        }
+        String fileSHA1code = ObjectStore.toHex(whole.digest(), 0);
+        ObjectStore.writeChunks(Repository.OBJECT_DIR, fileSHA1code, chunkIds);
+        return fileSHA1code;
     }
 
-    /** Get blobSHA1code. */
+    /** Get fileSHA1code. */
     public String getFileSHA1code() {
         return fileSHA1code;
     }
@@ -49,37 +115,77 @@ public class Blobs implements Serializable {
     }
 
 
-    /** Saves a blob to a file for future use. */
-    public void saveBlob() {
-        this.blobSHA1code = sha1(serialize(this));
-        File newBlob = join(Repository.BLOB_DIR, blobSHA1code);
-        if (!newBlob.exists()) {
-            try {
-                newBlob.createNewFile();
-            } catch (IOException e) {
-                System.err.println(e);
-            }
+    /** Turns a format 1 wrapper of the repository whose objects are in
+     *  OBJECTDIR to Blobs. */
+    public static Blobs fromFile(File objectDir, String sha1Code) {
+        return ObjectStore.readObject(objectDir, ObjectStore.BLOB, sha1Code, Blobs.class);
+    }
+
+    /** Returns the stored contents whose sha1code is FILESHA1CODE. */
+    public static byte[] readFileContents(String fileSHA1code) {
+        byte[] contents = ObjectStore.read(Repository.OBJECT_DIR, ObjectStore.CONTENTS,
+                fileSHA1code);
+        if (contents == null) {
+            throw error("No contents %s.", fileSHA1code);
         }
-        Utils.writeObject(newBlob, this);
+        return contents;
     }
 
-    /** Turns file to Blobs. */
-    public static Blobs fromFile(String sha1Code) {
-        return Utils.readObject(join(Repository.BLOB_DIR, sha1Code), Blobs.class);
+    /** Helps checkout #1 rewrite the file in current directory with the
+     *  contents FILESHA1CODE, making any directories its path needs. The
+     *  stored bytes are copied or linked into place without being decoded,
+     *  and the file is recorded in the StatCache. */
+    public static void checkoutRewrite(String fileSHA1code, String filename) {
+        File target = join(Repository.CWD, filename);
+        target.getParentFile().mkdirs();
+        ObjectStore.checkout(Repository.OBJECT_DIR, fileSHA1code, target);
+        StatCache.record(filename, fileSHA1code);
     }
 
-    /** Helps checkout #1 rewrite the file in current directory. */
-    public void checkoutRewrite(String filename) {
-        File rewrittenFile = join(Repository.CWD, filename);
-        if (!rewrittenFile.exists()) {
+    /** Rewrites each of FILES, path -> contents id, as checkoutRewrite
+     *  does. Many files are written by a fixed pool of Config's
+     *  CHECKOUT_WORKERS threads, each reading a file's contents and writing
+     *  it while the others wait on the disk, and while this thread makes
+     *  the directories of the files to come and hands them out. A file that
+     *  cannot be written does not stop the others; the errors are reported
+     *  together once every file has been tried. */
+    public static void checkoutRewrite(Map<String, String> files) {
+        int workers = Config.getInt(Config.CHECKOUT_WORKERS, DEFAULT_WORKERS);
+        if (workers <= 1 || files.size() < PARALLEL_THRESHOLD) {
+            for (Map.Entry<String, String> file : files.entrySet()) {
+                checkoutRewrite(file.getValue(), file.getKey());
+            }
+            return;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        LinkedHashMap<String, Future<?>> pending = new LinkedHashMap<>();
+        try {
+            for (Map.Entry<String, String> file : files.entrySet()) {
+                File target = join(Repository.CWD, file.getKey());
+                target.getParentFile().mkdirs();
+                pending.put(file.getKey(), pool.submit(() ->
+                        ObjectStore.checkout(Repository.OBJECT_DIR, file.getValue(), target)));
+            }
+        } finally {
+            pool.shutdown();
+        }
+        List<String> failures = new ArrayList<>();
+        for (Map.Entry<String, Future<?>> file : pending.entrySet()) {
             try {
-                rewrittenFile.createNewFile();
-            } catch (IOException e) {
-                System.err.println(e);
+                file.getValue().get();
+                StatCache.record(file.getKey(), files.get(file.getKey()));
+            } catch (ExecutionException e) {
+                failures.add(String.valueOf(e.getCause().getMessage()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                pool.shutdownNow();
+                throw error("Interrupted while writing %s.", file.getKey());
             }
         }
-        File contents = Utils.join(fileDir, fileSHA1code);
-        Utils.writeContents(rewrittenFile, readContentsAsString(contents));
+        if (!failures.isEmpty()) {
+            throw error("Cannot write %d of %d files:%n%s", failures.size(), files.size(),
+                    String.join(System.lineSeparator(), failures));
+        }
     }
 
 }
@@ -0,0 +1,327 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static gitlet.Utils.*;
+
+/** For each commit, a Bloom filter of the files it changed from its first
+ *  parent, so a walk for one file's history can pass over the commits that
+ *  certainly did not touch it without reading them. A filter answers
+ *  "maybe" or "certainly not"; about one "maybe" in a hundred is false.
+ *  The changed-paths file sits beside the commit-graph and holds, after a
+ *  header, one record per commit-graph row: the row, the filter's length
+ *  and its bits. An empty filter means no file changed, and a filter of
+ *  one all-ones byte, written when too many files changed to be worth a
+ *  filter, means "maybe" for every file. A row without a record, such as
+ *  one written before these filters existed, is also "maybe".
+ *
+ *  The changed-paths-index file holds, after a header, the position in
+ *  the changed-paths file of each row's record, 0 for none. Both files are
+ *  memory-mapped, so a filter is found without reading the others. An
+ *  index that is missing, as in repositories older than it, is rebuilt
+ *  from the records once.
+ *
+ *  @author Jeffrey Huang
+ */
+public class ChangedPaths {
+
+    /** Magic number at the start of the file. */
+    private static final int MAGIC = 0x47435046;
+
+    /** Version of the format. */
+    private static final int VERSION = 1;
+
+    /** Bytes before the first record. */
+    private static final int HEADER = 8;
+
+    /** Magic number at the start of the index. */
+    private static final int INDEX_MAGIC = 0x47435049;
+
+    /** Bytes in an entry of the index. */
+    private static final int OFFSET = 8;
+
+    /** Bits of filter per changed file. */
+    private static final int BITS_PER_PATH = 10;
+
+    /** Bits set for each file. */
+    private static final int HASHES = 7;
+
+    /** Most changed files a commit may have and still get a real filter. */
+    private static final int MAX_PATHS = 512;
+
+    /** The filter of a commit that changed too many files. */
+    private static final byte[] ALWAYS = {(byte) 0xff};
+
+    /** Filters already read, keyed by the path of their .objects directory. */
+    private static final HashMap<String, ChangedPaths> OPENED = new HashMap<>();
+
+    /** The changed-paths file. */
+    private final File file;
+
+    /** Its index. */
+    private final File indexFile;
+
+    /** The records and the index when opened, or null if there were none. */
+    private MappedByteBuffer data;
+    private MappedByteBuffer index;
+
+    /** Filters recorded by the current command, by row. */
+    private final HashMap<Integer, byte[]> added = new HashMap<>();
+
+    /** Rows whose filters are not yet in the file. */
+    private final List<Integer> unsaved = new ArrayList<>();
+
+    /** Filters of OBJECTDIR, none until mapped. */
+    private ChangedPaths(File objectDir) {
+        this.file = filterFile(objectDir);
+        this.indexFile = join(objectDir, "changed-paths-index");
+    }
+
+    /** Returns the changed-paths file of OBJECTDIR. */
+    public static File filterFile(File objectDir) {
+        return join(objectDir, "changed-paths");
+    }
+
+    /** Returns the filters of OBJECTDIR. */
+    private static ChangedPaths open(File objectDir) {
+        String key = objectDir.getAbsolutePath();
+        ChangedPaths result = OPENED.get(key);
+        if (result == null) {
+            result = new ChangedPaths(objectDir);
+            result.load();
+            OPENED.put(key, result);
+        }
+        return result;
+    }
+
+    /** Maps the records and their index, first rebuilding the index if it
+     *  is missing. */
+    private void load() {
+        if (!file.isFile()) {
+            return;
+        }
+        data = map(file);
+        if (data.limit() < HEADER || data.getInt(0) != MAGIC || data.getInt(4) != VERSION) {
+            throw error("Corrupt changed-paths file %s.", file);
+        }
+        if (!indexFile.isFile()) {
+            reindex();
+        }
+        index = map(indexFile);
+        if (index.limit() < HEADER || index.getInt(0) != INDEX_MAGIC
+                || index.getInt(4) != VERSION) {
+            throw error("Corrupt changed-paths index %s.", indexFile);
+        }
+    }
+
+    /** Writes the index of every whole record of the file. */
+    private void reindex() {
+        long[] offsets = new long[0];
+        int pos = HEADER;
+        while (pos + 8 <= data.limit()) {
+            int row = data.getInt(pos);
+            int length = data.getInt(pos + 4);
+            if (row < 0 || length < 0 || length > data.limit() - pos - 8) {
+                break;
+            }
+            if (row >= offsets.length) {
+                offsets = Arrays.copyOf(offsets, Math.max(row + 1, offsets.length * 2));
+            }
+            offsets[row] = pos;
+            pos += 8 + length;
+        }
+        ByteBuffer out = ByteBuffer.allocate(HEADER + offsets.length * OFFSET);
+        out.putInt(INDEX_MAGIC).putInt(VERSION);
+        for (long offset : offsets) {
+            out.putLong(offset);
+        }
+        File temp = new File(indexFile.getPath() + ".tmp");
+        writeContents(temp, out.array());
+        ObjectStore.replace(temp, indexFile);
+    }
+
+    /** Returns FILE mapped for reading. */
+    private static MappedByteBuffer map(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            throw error("Cannot map %s: %s", file, e.getMessage());
+        }
+    }
+
+    /** Returns the filter of ROW, or null if it has none. */
+    private byte[] get(int row) {
+        byte[] filter = added.get(row);
+        if (filter != null || index == null
+                || HEADER + (long) (row + 1) * OFFSET > index.limit()) {
+            return filter;
+        }
+        long offset = index.getLong(HEADER + row * OFFSET);
+        if (offset == 0 || offset + 8 > data.limit()) {
+            return null;
+        }
+        int length = data.getInt((int) offset + 4);
+        if (length < 0 || offset + 8 + length > data.limit()) {
+            return null;
+        }
+        filter = new byte[length];
+        data.get((int) offset + 8, filter);
+        return filter;
+    }
+
+    /** Records the filter of COMMIT, which is in ROW of the commit-graph of
+     *  OBJECTDIR, unless it has one. It is written by the next save. */
+    public static void add(File objectDir, int row, Commit commit) {
+        ChangedPaths paths = open(objectDir);
+        if (paths.get(row) != null) {
+            return;
+        }
+        Commit first = commit.getParent() == null ? null
+                : Commit.fromFile(objectDir, commit.getParent());
+        paths.added.put(row, filter(commit.changedFrom(first)));
+        paths.unsaved.add(row);
+    }
+
+    /** Records a filter for every row of the commit-graph of OBJECTDIR that
+     *  lacks one, and saves them. */
+    public static void addAll(File objectDir) {
+        CommitGraph graph = CommitGraph.open(objectDir);
+        for (int row = 0; row < graph.count(); row++) {
+            if (open(objectDir).get(row) == null) {
+                add(objectDir, row, Commit.fromFile(objectDir, graph.id(row)));
+            }
+        }
+        save(objectDir);
+    }
+
+    /** Appends the filters recorded for OBJECTDIR since the last save, then
+     *  writes their positions into the index. A record the index does not
+     *  name, left by an interrupted save, is passed over. */
+    public static void save(File objectDir) {
+        ChangedPaths paths = open(objectDir);
+        if (paths.unsaved.isEmpty()) {
+            return;
+        }
+        int size = HEADER;
+        for (int row : paths.unsaved) {
+            size += 8 + paths.added.get(row).length;
+        }
+        ByteBuffer out = ByteBuffer.allocate(size);
+        long[] offsets = new long[paths.unsaved.size()];
+        try (FileChannel channel = FileChannel.open(paths.file.toPath(),
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+             FileChannel index = FileChannel.open(paths.indexFile.toPath(),
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE)) {
+            long end = channel.size();
+            if (end == 0) {
+                out.putInt(MAGIC).putInt(VERSION);
+            }
+            for (int i = 0; i < offsets.length; i++) {
+                byte[] filter = paths.added.get(paths.unsaved.get(i));
+                offsets[i] = end + out.position();
+                out.putInt(paths.unsaved.get(i)).putInt(filter.length).put(filter);
+            }
+            write(channel, out.flip(), end);
+            if (index.size() == 0) {
+                write(index, ByteBuffer.allocate(HEADER).putInt(INDEX_MAGIC).putInt(VERSION)
+                        .flip(), 0);
+            }
+            for (int i = 0; i < offsets.length; i++) {
+                write(index, ByteBuffer.allocate(OFFSET).putLong(offsets[i]).flip(),
+                        HEADER + (long) paths.unsaved.get(i) * OFFSET);
+            }
+        } catch (IOException e) {
+            throw error("Cannot write %s: %s", paths.file, e.getMessage());
+        }
+        paths.unsaved.clear();
+    }
+
+    /** Writes DATA to CHANNEL at POSITION. */
+    private static void write(FileChannel channel, ByteBuffer data, long position)
+            throws IOException {
+        while (data.hasRemaining()) {
+            position += channel.write(data, position);
+        }
+    }
+
+    /** Returns false if the commit in ROW of the commit-graph of OBJECTDIR
+     *  certainly did not change the file NAME, and true if it may have. */
+    public static boolean mayHaveChanged(File objectDir, int row, String name) {
+        byte[] filter = open(objectDir).get(row);
+        if (filter == null || filter.length == 1 && filter[0] == ALWAYS[0]) {
+            return true;
+        }
+        if (filter.length == 0) {
+            return false;
+        }
+        int bits = filter.length * 8;
+        int[] hashes = hashes(name);
+        for (int i = 0; i < HASHES; i++) {
+            int bit = Math.floorMod(hashes[0] + i * hashes[1], bits);
+            if ((filter[bit / 8] & 1 << bit % 8) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns the names whose contents differ between the maps BEFORE and
+     *  AFTER, including names only one has. */
+    public static Set<String> changed(Map<String, String> before, Map<String, String> after) {
+        Set<String> result = new HashSet<>();
+        for (Map.Entry<String, String> entry : after.entrySet()) {
+            if (!entry.getValue().equals(before.get(entry.getKey()))) {
+                result.add(entry.getKey());
+            }
+        }
+        for (String name : before.keySet()) {
+            if (!after.containsKey(name)) {
+                result.add(name);
+            }
+        }
+        return result;
+    }
+
+    /** Returns the filter of the file names NAMES. */
+    private static byte[] filter(Set<String> names) {
+        if (names.size() > MAX_PATHS) {
+            return ALWAYS.clone();
+        }
+        byte[] filter = new byte[(names.size() * BITS_PER_PATH + 7) / 8];
+        int bits = filter.length * 8;
+        for (String name : names) {
+            int[] hashes = hashes(name);
+            for (int i = 0; i < HASHES; i++) {
+                int bit = Math.floorMod(hashes[0] + i * hashes[1], bits);
+                filter[bit / 8] |= 1 << bit % 8;
+            }
+        }
+        return filter;
+    }
+
+    /** Returns two independent hashes of NAME, the second odd, from which
+     *  the bits of NAME are derived. */
+    private static int[] hashes(String name) {
+        int first = 0x811c9dc5;
+        int second = 0x5bd1e995;
+        for (byte b : name.getBytes(StandardCharsets.UTF_8)) {
+            first = (first ^ (b & 0xff)) * 0x01000193;
+            second = Integer.rotateLeft(second ^ (b & 0xff), 13) * 0x5bd1e995;
+        }
+        second ^= second >>> 15;
+        return new int[] {first, second | 1};
+    }
+}
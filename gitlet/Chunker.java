@@ -0,0 +1,67 @@
+package gitlet;
+
+/** Splits large files into chunks at content-defined boundaries using
+ *  FastCDC: a gear hash is rolled over the bytes and a chunk ends where
+ *  the masked hash is zero. Because boundaries depend only on nearby
+ *  bytes, an edit moves the boundaries around it and no others, so the
+ *  unchanged chunks of a new version hash the same as before.
+ *
+ *  @author Jeffrey Huang
+ */
+public class Chunker {
+
+    /** No chunk is shorter than this, except the last. */
+    public static final int MIN_SIZE = 16 * 1024;
+
+    /** Chunks average about this size. */
+    public static final int AVG_SIZE = 64 * 1024;
+
+    /** No chunk is longer than this. */
+    public static final int MAX_SIZE = 256 * 1024;
+
+    /** Mask used before AVG_SIZE: more bits, so a cut is less likely. */
+    private static final long MASK_SMALL = -1L << (64 - 18);
+
+    /** Mask used after AVG_SIZE: fewer bits, so a cut is more likely. */
+    private static final long MASK_LARGE = -1L << (64 - 14);
+
+    /** Random value for each byte. Generated from a fixed seed, since
+     *  changing it would change every boundary. */
+    private static final long[] GEAR = new long[256];
+
+    static {
+        long x = 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < GEAR.length; i++) {
+            x ^= x << 13;
+            x ^= x >>> 7;
+            x ^= x << 17;
+            GEAR[i] = x;
+        }
+    }
+
+    /** Returns the length of the chunk of DATA that starts at START, looking
+     *  no further than END. */
+    public static int cut(byte[] data, int start, int end) {
+        int length = end - start;
+        if (length <= MIN_SIZE) {
+            return length;
+        }
+        int limit = Math.min(length, MAX_SIZE);
+        int normal = Math.min(limit, AVG_SIZE);
+        long hash = 0;
+        int i = MIN_SIZE;
+        for (; i < normal; i++) {
+            hash = (hash << 1) + GEAR[data[start + i] & 0xff];
+            if ((hash & MASK_SMALL) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < limit; i++) {
+            hash = (hash << 1) + GEAR[data[start + i] & 0xff];
+            if ((hash & MASK_LARGE) == 0) {
+                return i + 1;
+            }
+        }
+        return limit;
+    }
+}
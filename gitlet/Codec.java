@@ -0,0 +1,149 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+
+import static gitlet.Utils.*;
+
+/** Gitlet's own binary encoding of its metadata, used instead of Java
+ *  serialization. An encoded object is a version byte followed by its
+ *  fields in a fixed order: numbers as varints, strings as a varint of
+ *  their length plus one and their UTF-8 bytes, and object ids as a flag
+ *  byte and 20 raw bytes. A missing string or id is a single 0 byte.
+ *  Files written by Java serialization are recognized by their first two
+ *  bytes and still read, so older repositories open until they are
+ *  migrated.
+ *
+ *  @author Jeffrey Huang
+ */
+public class Codec {
+
+    /** First two bytes of a Java serialization stream. */
+    private static final int JAVA_MAGIC = 0xaced;
+
+    /** Builds an encoding. */
+    public static class Writer {
+
+        /** The bytes written so far. */
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        /** Writes the low eight bits of VALUE. */
+        public void writeByte(int value) {
+            out.write(value);
+        }
+
+        /** Writes the non-negative VALUE as a varint. */
+        public void writeVarint(long value) {
+            Delta.writeVarint(out, value);
+        }
+
+        /** Writes VALUE, which may be null. */
+        public void writeString(String value) {
+            if (value == null) {
+                out.write(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length + 1);
+            out.write(bytes, 0, bytes.length);
+        }
+
+        /** Writes the hex id SHA, which may be null, as raw bytes. */
+        public void writeId(String sha) {
+            if (sha == null) {
+                out.write(0);
+                return;
+            }
+            out.write(1);
+            out.write(ObjectStore.toBytes(sha), 0, UID_LENGTH / 2);
+        }
+
+        /** Returns the encoding. */
+        public byte[] toByteArray() {
+            return out.toByteArray();
+        }
+    }
+
+    /** Reads an encoding back, in the order it was written. */
+    public static class Reader {
+
+        /** The encoding. */
+        private final byte[] data;
+
+        /** Position of the next byte to read. */
+        private final int[] pos = {0};
+
+        /** A reader of DATA. */
+        public Reader(byte[] data) {
+            this.data = data;
+        }
+
+        /** Returns the next byte, from 0 to 255. */
+        public int readByte() {
+            check(1);
+            return data[pos[0]++] & 0xff;
+        }
+
+        /** Returns the next varint. */
+        public int readVarint() {
+            return Delta.readVarint(data, pos);
+        }
+
+        /** Returns the next string, or null if none was written. */
+        public String readString() {
+            int length = readVarint() - 1;
+            if (length < 0) {
+                return null;
+            }
+            check(length);
+            String result = new String(data, pos[0], length, StandardCharsets.UTF_8);
+            pos[0] += length;
+            return result;
+        }
+
+        /** Returns the next id in hex, or null if none was written. */
+        public String readId() {
+            if (readByte() == 0) {
+                return null;
+            }
+            check(UID_LENGTH / 2);
+            String result = ObjectStore.toHex(data, pos[0]);
+            pos[0] += UID_LENGTH / 2;
+            return result;
+        }
+
+        /** Throws if fewer than LENGTH bytes are left. */
+        private void check(int length) {
+            if (length > data.length - pos[0]) {
+                throw error("Corrupt metadata: encoding ends early.");
+            }
+        }
+    }
+
+    /** Returns true if DATA was written by Java serialization. */
+    public static boolean isJavaSerialized(byte[] data) {
+        return data.length >= 2 && ((data[0] & 0xff) << 8 | data[1] & 0xff) == JAVA_MAGIC;
+    }
+
+    /** Returns the object of EXPECTEDCLASS that Java serialization wrote
+     *  into DATA. */
+    public static <T extends Serializable> T readJava(byte[] data, Class<T> expectedClass) {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data))) {
+            return expectedClass.cast(in.readObject());
+        } catch (IOException | ClassCastException | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Throws unless VERSION is one CLASSNAME can read, up to LATEST. */
+    public static void checkVersion(int version, int latest, String className) {
+        if (version < 1 || version > latest) {
+            throw error("Cannot read %s of version %d; this Gitlet is too old.",
+                    className, version);
+        }
+    }
+}
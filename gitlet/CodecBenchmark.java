@@ -0,0 +1,97 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.stream.Stream;
+
+import static gitlet.Utils.*;
+
+/** A benchmark of reading and writing commits, whose main program may be
+ *  invoked as
+ *      java gitlet.CodecBenchmark [COMMITS [FILES]]
+ *  It builds COMMITS commits (default 5000) whose trees track FILES files
+ *  each (default 50), one of them changing per commit, in a temporary
+ *  object directory. It then times encoding and decoding the commits, which
+ *  hold a header and the id of their tree, and reading every commit's
+ *  files back through its trees, after a warm-up round.
+ *
+ *  @author Jeffrey Huang
+ */
+public class CodecBenchmark {
+
+    /** Runs the benchmark with the sizes given in ARGS. */
+    public static void main(String... args) throws IOException {
+        int commits = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int files = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        Path dir = Files.createTempDirectory("gitlet-benchmark");
+        try {
+            File objectDir = dir.toFile();
+            Commit[] history = build(objectDir, commits, files);
+            run(objectDir, history, false);
+            run(objectDir, history, true);
+        } finally {
+            try (Stream<Path> paths = Files.walk(dir)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    /** Returns COMMITS commits, each with its trees of FILES files stored in
+     *  OBJECTDIR. */
+    private static Commit[] build(File objectDir, int commits, int files) {
+        HashMap<String, String> start = new HashMap<>();
+        for (int f = 0; f < files; f++) {
+            start.put("dir" + f % 5 + "/file" + f + ".txt", sha1("start" + f));
+        }
+        String tree = Tree.write(objectDir, start);
+        Commit[] history = new Commit[commits];
+        String parent = null;
+        for (int i = 0; i < commits; i++) {
+            HashMap<String, String> change = new HashMap<>();
+            int f = i % files;
+            change.put("dir" + f % 5 + "/file" + f + ".txt", sha1("" + i));
+            tree = Tree.apply(objectDir, tree, change);
+            history[i] = new Commit("Commit number " + i, Commit.getDate(i), parent);
+            history[i].setTree(tree);
+            parent = sha1("commit" + i);
+        }
+        return history;
+    }
+
+    /** Encodes and decodes every commit of HISTORY and reads its files from
+     *  OBJECTDIR, printing the times and sizes if REPORT. */
+    private static void run(File objectDir, Commit[] history, boolean report) {
+        byte[][] encoded = new byte[history.length][];
+        long start = System.nanoTime();
+        for (int i = 0; i < history.length; i++) {
+            encoded[i] = history[i].encode();
+        }
+        long encode = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (byte[] data : encoded) {
+            Commit.decode(objectDir, data, null);
+        }
+        long decode = System.nanoTime() - start;
+        start = System.nanoTime();
+        long entries = 0;
+        for (Commit commit : history) {
+            entries += Tree.files(objectDir, commit.getTree()).size();
+        }
+        long read = System.nanoTime() - start;
+        if (report) {
+            long bytes = 0;
+            for (byte[] data : encoded) {
+                bytes += data.length;
+            }
+            int count = history.length;
+            System.out.printf("Commit %8d bytes  encode %8.2f us  decode %8.2f us%n",
+                    bytes / count, encode / 1000.0 / count, decode / 1000.0 / count);
+            System.out.printf("Trees  %8d files  read   %8.2f us%n",
+                    entries / count, read / 1000.0 / count);
+        }
+    }
+}
@@ -1,22 +1,54 @@
 package gitlet;
 
 import java.io.File;
-import java.io.IOException;
 import java.io.Serializable;
 import java.text.DateFormat;
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 import java.util.TimeZone;
 
 import static gitlet.Utils.*;
 
 /** Represents a gitlet commit object.
- *  The commit tracks filenames to their contents.
+ *  The commit tracks file paths to their contents. It is stored in the
+ *  encoding of Codec: a version byte, the message, the timestamp, the two
+ *  parents, and the id of its root Tree, through which the map of files
+ *  is read when it is first asked for; the maps last read are cached.
  *
  *  @author Jeffrey Huang
  */
 public class Commit implements Serializable {
+    /** The id older versions computed for this class, so their commits
+     *  still read. */
+    private static final long serialVersionUID = -679525240170463093L;
+
+    /** Version of the encoding this class writes. */
+    private static final int VERSION = 3;
+
+    /** Number of maps of files kept. */
+    private static final int MANIFEST_CACHE = 16;
+
+    /** The maps of files last read from trees, keyed by tree id, least
+     *  recently used first. They are never handed out, only copied. */
+    private static final LinkedHashMap<String, HashMap<String, String>> MANIFESTS =
+            new LinkedHashMap<>(MANIFEST_CACHE, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<String, HashMap<String, String>> eldest) {
+                    return size() > MANIFEST_CACHE;
+                }
+            };
+
+    /** Format of timestamps, with a 24-hour clock. */
+    private static final String DATE_FORMAT = "E MMM dd HH:mm:ss yyyy Z";
+
     /**
      *
      * List all instance variables of the Commit class here with a useful
@@ -39,9 +71,17 @@ public class Commit implements Serializable {
     private String sha1code;
 
 
-    /** Holds filename -> blobSHA1code. */
+    /** Holds filename -> sha1code of the file's contents, or null until it
+     *  is read from the tree. */
     private HashMap<String, String> commitMap = new HashMap<String, String>();
 
+    /** Id of the root tree, or null if it has not been written. */
+    private String tree;
+
+    /** The .objects directory this commit was read from, or null for the
+     *  current repository's. */
+    private transient File objectDir;
+
     /** Commit constructor. */
     public Commit(String message, String timestamp, String parent) {
         this.message = message;
@@ -60,9 +100,14 @@ public class Commit implements Serializable {
     //@Source StackOverflow
     /** Returns the current timestamp. */
     public static String getDate() {
-        Date date = new Date();
+        return getDate(System.currentTimeMillis() / 1000);
+    }
+
+    /** Returns the timestamp of TIME, in seconds since the epoch. */
+    public static String getDate(long time) {
+        Date date = new Date(time * 1000);
         TimeZone pstTimeZone = TimeZone.getTimeZone("America/Los_Angeles");
-        DateFormat formatter = new SimpleDateFormat("E MMM dd hh:mm:ss yyyy Z");
+        DateFormat formatter = new SimpleDateFormat(DATE_FORMAT, Locale.US);
         formatter.setTimeZone(pstTimeZone);
         String formattedDate = formatter.format(date);
         return formattedDate;
@@ -81,40 +126,211 @@ public class Commit implements Serializable {
 
     /** Saves a commit to a file for future use. */
     public void saveCommmit() {
-        this.sha1code = sha1(serialize(this));
-        File newCommit = join(Repository.COMMIT_DIR, sha1code);
-        if (!newCommit.exists()) {
-            try {
-                newCommit.createNewFile();
-            } catch (IOException e) {
-                System.err.println(e);
-            }
+        byte[] encoded = encode(Repository.OBJECT_DIR);
+        this.sha1code = sha1(encoded);
+        ObjectStore.write(Repository.OBJECT_DIR, ObjectStore.COMMIT, sha1code, encoded);
+        CommitGraph.add(Repository.OBJECT_DIR, sha1code);
+    }
+
+    /** Returns the encoding of this commit. If its tree has not been
+     *  written, its id is computed without writing it. */
+    public byte[] encode() {
+        Codec.Writer out = new Codec.Writer();
+        out.writeByte(VERSION);
+        out.writeString(message);
+        out.writeString(timestamp);
+        out.writeId(parent);
+        out.writeId(parent2);
+        out.writeId(tree == null ? Tree.id(commitMap) : tree);
+        return out.toByteArray();
+    }
+
+    /** Returns the encoding of this commit, first writing its trees to
+     *  OBJECTDIR if they have not been. */
+    public byte[] encode(File objectDir) {
+        if (tree == null) {
+            tree = Tree.write(objectDir, commitMap);
+        }
+        return encode();
+    }
+
+    /** Returns the commit whose encoding is DATA and whose sha1code is
+     *  SHA1CODE, its files to be read from the current repository.
+     *  Commits written by Java serialization are read too. */
+    public static Commit decode(byte[] data, String sha1code) {
+        return decode(Repository.OBJECT_DIR, data, sha1code);
+    }
+
+    /** Returns the commit whose encoding is DATA and whose sha1code is
+     *  SHA1CODE, its files to be read from OBJECTDIR. */
+    public static Commit decode(File objectDir, byte[] data, String sha1code) {
+        if (Codec.isJavaSerialized(data)) {
+            Commit commit = Codec.readJava(data, Commit.class);
+            commit.objectDir = objectDir;
+            return commit;
+        }
+        Codec.Reader in = new Codec.Reader(data);
+        int version = in.readByte();
+        if (version != VERSION) {
+            throw error("Cannot read commit %s of version %d.", sha1code, version);
+        }
+        Commit commit = new Commit(in.readString(), in.readString(),
+                in.readId(), in.readId());
+        commit.sha1code = sha1code;
+        commit.tree = in.readId();
+        commit.commitMap = null;
+        commit.objectDir = objectDir;
+        return commit;
+    }
+
+    /** Returns a copy of the cached files of the tree TREE, or null if they
+     *  are not cached. */
+    private static HashMap<String, String> cachedManifest(String tree) {
+        synchronized (MANIFESTS) {
+            HashMap<String, String> files = MANIFESTS.get(tree);
+            return files == null ? null : new HashMap<>(files);
         }
-        Utils.writeObject(newCommit, this);
     }
 
     /** Turns a file to a commit. */
     public static Commit fromFile(String sha1code) {
-        return Utils.readObject(join(Repository.COMMIT_DIR, sha1code), Commit.class);
+        return fromFile(Repository.OBJECT_DIR, sha1code);
+    }
+
+    /** Turns a file of the repository whose objects are in OBJECTDIR to a commit. */
+    public static Commit fromFile(File objectDir, String sha1code) {
+        byte[] data = ObjectStore.read(objectDir, ObjectStore.COMMIT, sha1code);
+        if (data == null) {
+            throw error("No commit %s.", sha1code);
+        }
+        return decode(objectDir, data, sha1code);
     }
 
     /** Returns the log message for this commit. */
     public void getLogMessage() {
-        System.out.println("===");
-        System.out.println("commit " + sha1code);
+        System.out.print(logEntry());
+    }
+
+    /** Returns the entry of this commit in log, ending with a blank line. */
+    public String logEntry() {
+        StringBuilder entry = new StringBuilder();
+        entry.append("===\ncommit ").append(sha1code).append('\n');
         if (parent2 != null) {
-            System.out.println("Merge: " + parent.substring(0, 7) + " "
-                    + parent2.substring(0, 7));
+            entry.append("Merge: ").append(parent, 0, 7).append(' ')
+                    .append(parent2, 0, 7).append('\n');
+        }
+        entry.append("Date: ").append(timestamp).append('\n');
+        entry.append(message).append("\n\n");
+        return entry.toString();
+    }
+
+    /** Returns this commit formatted by FORMAT, in which %H is the id, %h
+     *  its first seven digits, %P and %p the same of the parents, %ad the
+     *  date, %at the date in seconds since the epoch, %s the message, %n a
+     *  newline and %% a percent sign. Anything else is copied. */
+    public String format(String format) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < format.length(); i++) {
+            char c = format.charAt(i);
+            String rest = format.substring(i + 1);
+            if (c != '%' || rest.isEmpty()) {
+                result.append(c);
+            } else if (rest.startsWith("ad")) {
+                result.append(timestamp);
+                i += 2;
+            } else if (rest.startsWith("at")) {
+                result.append(getTime());
+                i += 2;
+            } else {
+                i += 1;
+                switch (rest.charAt(0)) {
+                    case 'H':
+                        result.append(sha1code);
+                        break;
+                    case 'h':
+                        result.append(sha1code, 0, 7);
+                        break;
+                    case 'P':
+                        result.append(parents(UID_LENGTH));
+                        break;
+                    case 'p':
+                        result.append(parents(7));
+                        break;
+                    case 's':
+                        result.append(message);
+                        break;
+                    case 'n':
+                        result.append('\n');
+                        break;
+                    case '%':
+                        result.append('%');
+                        break;
+                    default:
+                        result.append('%').append(rest.charAt(0));
+                }
+            }
+        }
+        return result.toString();
+    }
+
+    /** Returns the ids of the parents cut to LENGTH digits, separated by a
+     *  space. */
+    private String parents(int length) {
+        if (parent == null) {
+            return "";
+        }
+        if (parent2 == null) {
+            return parent.substring(0, length);
         }
-        System.out.println("Date: " + timestamp);
-        System.out.println(message + "\n");
+        return parent.substring(0, length) + " " + parent2.substring(0, length);
     }
 
     /** Returns the commitMap. */
     public HashMap<String, String> getCommitMap() {
+        if (commitMap == null) {
+            commitMap = cachedManifest(tree);
+            if (commitMap == null) {
+                commitMap = Tree.files(objects(), tree);
+                synchronized (MANIFESTS) {
+                    MANIFESTS.put(tree, new HashMap<>(commitMap));
+                }
+            }
+        }
         return this.commitMap;
     }
 
+    /** Returns the id of the root tree, or null for a commit stored before
+     *  trees were. */
+    public String getTree() {
+        return tree;
+    }
+
+    /** Makes the tree TREE this commit's files, for a commit not yet
+     *  saved. */
+    public void setTree(String tree) {
+        this.tree = tree;
+        this.commitMap = null;
+    }
+
+    /** Returns the paths of the files that differ between BEFORE, which may
+     *  be null for none, and this commit. Where both have trees, identical
+     *  directories are passed over. */
+    public Set<String> changedFrom(Commit before) {
+        if (before == null) {
+            return tree == null ? new HashSet<>(getCommitMap().keySet())
+                    : Tree.changed(objects(), null, tree);
+        }
+        if (tree != null && before.tree != null) {
+            return Tree.changed(objects(), before.tree, tree);
+        }
+        return ChangedPaths.changed(before.getCommitMap(), getCommitMap());
+    }
+
+    /** Returns the .objects directory this commit's trees are in. */
+    private File objects() {
+        return objectDir == null ? Repository.OBJECT_DIR : objectDir;
+    }
+
     /** Returns the parent. */
     public String getParent() {
         return parent;
@@ -125,6 +341,25 @@ public class Commit implements Serializable {
         return parent2;
     }
 
+    /** Returns the timestamp. */
+    public String getTimestamp() {
+        return timestamp;
+    }
+
+    /** Returns the time of the timestamp in seconds since the epoch, or 0 if
+     *  it cannot be read. */
+    public long getTime() {
+        if (timestamp == null) {
+            return 0;
+        }
+        try {
+            return new SimpleDateFormat(DATE_FORMAT, Locale.US).parse(timestamp).getTime()
+                    / 1000;
+        } catch (ParseException e) {
+            return 0;
+        }
+    }
+
     /** Returns the commit message. */
     public String getCommitMessage() {
         return message;
@@ -0,0 +1,381 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+
+import static gitlet.Utils.*;
+
+/** The shape of history in one file, so walks need not read commits. After
+ *  a header, the commit-graph file holds one fixed-width row per commit:
+ *  its id, the row numbers of its two parents (-1 for none), its
+ *  generation number (1 for a root, otherwise one more than its highest
+ *  parent) and its time in seconds. Rows are only ever appended, and a
+ *  commit is appended after its parents, so row numbers are a stable
+ *  topological order: a commit's ancestors all have smaller rows. A
+ *  commit missing from the graph is read from its object instead.
+ *
+ *  The file is memory-mapped, so opening it costs the same whatever the
+ *  length of history. An id is looked up in the CommitIndex, which sorts
+ *  the ids of all but the last few rows; only those few are kept in a
+ *  table, built on the first lookup that needs it. Rows added by the
+ *  current command are kept in memory until saved.
+ *
+ *  @author Jeffrey Huang
+ */
+public class CommitGraph {
+
+    /** Magic number at the start of the file. */
+    private static final int MAGIC = 0x47435048;
+
+    /** Version of the format. */
+    private static final int VERSION = 1;
+
+    /** Bytes before the first row. */
+    private static final int HEADER = 8;
+
+    /** Bytes in a raw object id. */
+    private static final int ID_BYTES = UID_LENGTH / 2;
+
+    /** Bytes in a row: id, two parents, generation and time. */
+    private static final int ROW = ID_BYTES + 4 + 4 + 4 + 8;
+
+    /** Row number meaning "no parent". */
+    public static final int NONE = -1;
+
+    /** Graphs already read, keyed by the path of their .objects directory. */
+    private static final HashMap<String, CommitGraph> OPENED = new HashMap<>();
+
+    /** The .objects directory of the graph. */
+    private final File objectDir;
+
+    /** The commit-graph file. */
+    private final File file;
+
+    /** The rows of the file when it was opened, or null if it had none. */
+    private MappedByteBuffer map;
+
+    /** Number of rows in MAP. */
+    private int mapped;
+
+    /** Ids of the rows after MAPPED, back to back. */
+    private byte[] ids = new byte[0];
+
+    /** Parents, generations and times of the rows after MAPPED. */
+    private int[] parents1 = new int[0];
+    private int[] parents2 = new int[0];
+    private int[] generations = new int[0];
+    private long[] times = new long[0];
+
+    /** Number of rows, and how many of them are in the file. */
+    private int count;
+    private int saved;
+
+    /** Row number of each id the CommitIndex does not cover, or null until
+     *  first needed. */
+    private HashMap<String, Integer> tail;
+
+    /** A graph of OBJECTDIR, empty until read. */
+    private CommitGraph(File objectDir) {
+        this.objectDir = objectDir;
+        this.file = graphFile(objectDir);
+    }
+
+    /** Returns the commit-graph file of OBJECTDIR. */
+    public static File graphFile(File objectDir) {
+        return join(objectDir, "commit-graph");
+    }
+
+    /** Returns the graph of OBJECTDIR, which is empty if it has none. */
+    public static CommitGraph open(File objectDir) {
+        String key = objectDir.getAbsolutePath();
+        CommitGraph graph = OPENED.get(key);
+        if (graph == null) {
+            graph = new CommitGraph(objectDir);
+            graph.load();
+            OPENED.put(key, graph);
+        }
+        return graph;
+    }
+
+    /** Forgets the graph of OBJECTDIR and deletes its file. */
+    public static void delete(File objectDir) {
+        OPENED.remove(objectDir.getAbsolutePath());
+        graphFile(objectDir).delete();
+    }
+
+    /** Maps the rows of the file, ignoring a partly written last row. */
+    private void load() {
+        if (!file.isFile()) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            throw error("Cannot map %s: %s", file, e.getMessage());
+        }
+        if (map.limit() < HEADER || map.getInt(0) != MAGIC || map.getInt(4) != VERSION) {
+            throw error("Corrupt commit-graph %s.", file);
+        }
+        mapped = (map.limit() - HEADER) / ROW;
+        count = mapped;
+        saved = mapped;
+    }
+
+    /** Returns the position in MAP of the field OFFSET bytes into ROW. */
+    private int position(int row, int offset) {
+        return HEADER + row * ROW + offset;
+    }
+
+    /** Makes room for at least SIZE rows after MAPPED. */
+    private void grow(int size) {
+        if (size <= parents1.length) {
+            return;
+        }
+        int capacity = Math.max(size, parents1.length * 2);
+        ids = Arrays.copyOf(ids, capacity * ID_BYTES);
+        parents1 = Arrays.copyOf(parents1, capacity);
+        parents2 = Arrays.copyOf(parents2, capacity);
+        generations = Arrays.copyOf(generations, capacity);
+        times = Arrays.copyOf(times, capacity);
+    }
+
+    /** Returns the number of rows. */
+    public int count() {
+        return count;
+    }
+
+    /** Returns the row of the commit SHA, or NONE if it is not in the graph. */
+    public int row(String sha) {
+        if (sha == null) {
+            return NONE;
+        }
+        int row = CommitIndex.row(objectDir, sha);
+        if (row != NONE && row < count && id(row).equals(sha)) {
+            return row;
+        }
+        if (tail == null) {
+            tail = new HashMap<>();
+            for (int i = CommitIndex.count(objectDir); i < count; i++) {
+                tail.put(id(i), i);
+            }
+        }
+        Integer found = tail.get(sha);
+        return found == null ? NONE : found;
+    }
+
+    /** Returns the id of the commit in ROW. */
+    public String id(int row) {
+        byte[] id = new byte[ID_BYTES];
+        copyId(row, id, 0);
+        return ObjectStore.toHex(id, 0);
+    }
+
+    /** Copies the raw id of ROW into DEST at DESTOFFSET. */
+    void copyId(int row, byte[] dest, int destOffset) {
+        if (row < mapped) {
+            map.get(position(row, 0), dest, destOffset, ID_BYTES);
+        } else {
+            System.arraycopy(ids, (row - mapped) * ID_BYTES, dest, destOffset, ID_BYTES);
+        }
+    }
+
+    /** Returns the row of the first parent of ROW, or NONE. */
+    public int parent1(int row) {
+        return row < mapped ? map.getInt(position(row, ID_BYTES)) : parents1[row - mapped];
+    }
+
+    /** Returns the row of the second parent of ROW, or NONE. */
+    public int parent2(int row) {
+        return row < mapped ? map.getInt(position(row, ID_BYTES + 4))
+                : parents2[row - mapped];
+    }
+
+    /** Returns the generation number of ROW. */
+    public int generation(int row) {
+        return row < mapped ? map.getInt(position(row, ID_BYTES + 8))
+                : generations[row - mapped];
+    }
+
+    /** Returns the time of ROW in seconds since the epoch. */
+    public long time(int row) {
+        return row < mapped ? map.getLong(position(row, ID_BYTES + 12)) : times[row - mapped];
+    }
+
+    /** Returns the parents of the commit SHA of OBJECTDIR, first parent first,
+     *  from the graph if it holds SHA and otherwise from the commit. */
+    public static String[] parents(File objectDir, String sha) {
+        CommitGraph graph = open(objectDir);
+        int row = graph.row(sha);
+        if (row == NONE) {
+            Commit commit = Commit.fromFile(objectDir, sha);
+            return parentList(commit.getParent(), commit.getParent2());
+        }
+        int parent1 = graph.parent1(row);
+        int parent2 = graph.parent2(row);
+        return parentList(parent1 == NONE ? null : graph.id(parent1),
+                parent2 == NONE ? null : graph.id(parent2));
+    }
+
+    /** Returns PARENT1 and PARENT2 without the nulls. */
+    private static String[] parentList(String parent1, String parent2) {
+        if (parent1 == null) {
+            return new String[0];
+        }
+        if (parent2 == null) {
+            return new String[] {parent1};
+        }
+        return new String[] {parent1, parent2};
+    }
+
+    /** Adds the commit SHA of OBJECTDIR to its graph, after any ancestors the
+     *  graph lacks, and returns its row. Only the new rows are written. Fetch
+     *  and push copy a commit's whole history, so an ancestor's object is
+     *  missing only in a damaged repository; then SHA is left out, NONE is
+     *  returned and the graph is marked partial. The changed-paths filters
+     *  of the new rows are written too, and the indexes over the graph are
+     *  brought up to date. */
+    public static int add(File objectDir, String sha) {
+        CommitGraph graph = open(objectDir);
+        if (!graph.walk(sha)) {
+            markPartial(objectDir);
+        }
+        graph.finish();
+        return graph.row(sha);
+    }
+
+    /** Adds every commit of OBJECTDIR to its graph, writing the files and
+     *  indexes once at the end. If every commit could be added, the graph
+     *  is no longer marked partial. */
+    public static void addAll(File objectDir) {
+        CommitGraph graph = open(objectDir);
+        boolean whole = true;
+        for (String sha : ObjectStore.list(objectDir, ObjectStore.COMMIT)) {
+            whole &= graph.walk(sha);
+        }
+        graph.finish();
+        if (whole) {
+            partialFile(objectDir).delete();
+        } else {
+            markPartial(objectDir);
+        }
+    }
+
+    /** Returns true if every commit of OBJECTDIR is in its graph: the graph
+     *  exists and no commit has been left out of it. */
+    public static boolean complete(File objectDir) {
+        return graphFile(objectDir).isFile() && !partialFile(objectDir).isFile();
+    }
+
+    /** Returns the file whose presence marks the graph of OBJECTDIR as
+     *  lacking some commits. */
+    private static File partialFile(File objectDir) {
+        return join(objectDir, "commit-graph-partial");
+    }
+
+    /** Marks the graph of OBJECTDIR as lacking some commits. */
+    private static void markPartial(File objectDir) {
+        writeContents(partialFile(objectDir), "");
+    }
+
+    /** Appends rows in memory for the commit SHA and the ancestors the graph
+     *  lacks, parents first. Returns false if SHA could not be added because
+     *  the object of it or of an ancestor is missing. */
+    private boolean walk(String sha) {
+        Deque<String> pending = new ArrayDeque<>();
+        pending.push(sha);
+        while (!pending.isEmpty()) {
+            String id = pending.peek();
+            if (row(id) != NONE) {
+                pending.pop();
+                continue;
+            }
+            if (!ObjectStore.contains(objectDir, ObjectStore.COMMIT, id)) {
+                return false;
+            }
+            Commit commit = Commit.fromFile(objectDir, id);
+            String parent1 = commit.getParent();
+            String parent2 = commit.getParent2();
+            if (parent1 != null && row(parent1) == NONE) {
+                pending.push(parent1);
+                continue;
+            }
+            if (parent2 != null && row(parent2) == NONE) {
+                pending.push(parent2);
+                continue;
+            }
+            append(id, row(parent1), row(parent2), commit.getTime());
+            ChangedPaths.add(objectDir, row(id), commit);
+            pending.pop();
+        }
+        return true;
+    }
+
+    /** Writes the new rows and their changed-paths filters, and brings the
+     *  indexes over the graph up to date. */
+    private void finish() {
+        save();
+        ChangedPaths.save(objectDir);
+        CommitIndex.update(objectDir);
+        MessageIndex.update(objectDir);
+    }
+
+    /** Adds a row for the commit SHA with parents in rows PARENT1 and PARENT2
+     *  and time TIME, in memory only. */
+    private void append(String sha, int parent1, int parent2, long time) {
+        int i = count - mapped;
+        grow(i + 1);
+        System.arraycopy(ObjectStore.toBytes(sha), 0, ids, i * ID_BYTES, ID_BYTES);
+        parents1[i] = parent1;
+        parents2[i] = parent2;
+        int generation = 0;
+        if (parent1 != NONE) {
+            generation = generation(parent1);
+        }
+        if (parent2 != NONE) {
+            generation = Math.max(generation, generation(parent2));
+        }
+        generations[i] = generation + 1;
+        times[i] = time;
+        if (tail != null) {
+            tail.put(sha, count);
+        }
+        count += 1;
+    }
+
+    /** Appends the rows not yet in the file, first cutting off any partly
+     *  written row an interrupted command left behind. */
+    private void save() {
+        if (saved == count) {
+            return;
+        }
+        ByteBuffer out = ByteBuffer.allocate(HEADER + (count - saved) * ROW);
+        if (!file.isFile()) {
+            out.putInt(MAGIC).putInt(VERSION);
+        }
+        for (int i = saved - mapped; i < count - mapped; i++) {
+            out.put(ids, i * ID_BYTES, ID_BYTES);
+            out.putInt(parents1[i]).putInt(parents2[i]).putInt(generations[i]).putLong(times[i]);
+        }
+        out.flip();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE)) {
+            long end = channel.size() == 0 ? 0 : HEADER + (long) saved * ROW;
+            channel.truncate(end);
+            channel.position(end);
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+        } catch (IOException e) {
+            throw error("Cannot write %s: %s", file, e.getMessage());
+        }
+        saved = count;
+    }
+}
@@ -0,0 +1,258 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeSet;
+
+import static gitlet.Utils.*;
+
+/** The ids of the commits of a repository in sorted order, so that an
+ *  abbreviated id is resolved, and a whole one found in the commit-graph,
+ *  by binary search. After a header the commit-index file holds a
+ *  256-entry fanout table (the number of ids whose first byte is at most
+ *  i), the sorted 20-byte ids of the first rows of the commit-graph and,
+ *  in the same order, the row of each. The file is memory-mapped. Commits
+ *  added to the graph since the index was written are checked one by one,
+ *  and once there are more than TAIL_LIMIT of them the index is rewritten.
+ *  Only when the graph is not complete (see CommitGraph.complete) are the
+ *  commit objects listed as well, to find the commits it lacks.
+ *
+ *  @author Jeffrey Huang
+ */
+public class CommitIndex {
+
+    /** Magic number at the start of the file. */
+    private static final int MAGIC = 0x47434958;
+
+    /** Version of the format. */
+    private static final int VERSION = 2;
+
+    /** Bytes in a raw object id. */
+    private static final int ID_BYTES = UID_LENGTH / 2;
+
+    /** Bytes before the fanout table. */
+    private static final int HEADER = 12;
+
+    /** Position in the map of the first id. */
+    private static final int ID_START = HEADER + 256 * 4;
+
+    /** Most commits the graph may have beyond the index before the index
+     *  is rewritten. */
+    private static final int TAIL_LIMIT = 1024;
+
+    /** Indexes already mapped, keyed by the path of their .objects directory. */
+    private static final HashMap<String, CommitIndex> OPENED = new HashMap<>();
+
+    /** The mapped file, or null if there is none. */
+    private final MappedByteBuffer map;
+
+    /** Number of ids in the index, which are the first rows of the graph. */
+    private final int count;
+
+    /** An index read from MAP, or an empty one if MAP is null. */
+    private CommitIndex(MappedByteBuffer map) {
+        if (map != null && (map.getInt(0) != MAGIC || map.getInt(4) != VERSION)) {
+            throw error("Corrupt commit index.");
+        }
+        this.map = map;
+        count = map == null ? 0 : map.getInt(8);
+    }
+
+    /** Returns the index file of OBJECTDIR. */
+    public static File indexFile(File objectDir) {
+        return join(objectDir, "commit-index");
+    }
+
+    /** Returns the mapped index of OBJECTDIR. */
+    private static CommitIndex open(File objectDir) {
+        String key = objectDir.getAbsolutePath();
+        if (OPENED.containsKey(key)) {
+            return OPENED.get(key);
+        }
+        MappedByteBuffer map = null;
+        File file = indexFile(objectDir);
+        if (file.isFile()) {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } catch (IOException e) {
+                throw error("Cannot map %s: %s", file, e.getMessage());
+            }
+        }
+        CommitIndex index = new CommitIndex(map);
+        OPENED.put(key, index);
+        return index;
+    }
+
+    /** Returns the commits of OBJECTDIR whose ids start with PREFIX, which
+     *  may be of any length and case, in sorted order. At most LIMIT are
+     *  returned, so a LIMIT of 2 is enough to tell a unique prefix from an
+     *  ambiguous one. Unless the commit-graph is incomplete, this reads only
+     *  the index and the rows added since it was written. */
+    public static List<String> resolve(File objectDir, String prefix, int limit) {
+        List<String> result = new ArrayList<>();
+        prefix = prefix.toLowerCase();
+        if (prefix.isEmpty() || prefix.length() > UID_LENGTH) {
+            return result;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (Character.digit(prefix.charAt(i), 16) < 0) {
+                return result;
+            }
+        }
+        CommitIndex index = open(objectDir);
+        CommitGraph graph = CommitGraph.open(objectDir);
+        List<String> indexed = new ArrayList<>();
+        index.search(prefix, limit, indexed);
+        TreeSet<String> found = new TreeSet<>(indexed);
+        for (int row = index.count; row < graph.count(); row++) {
+            String sha = graph.id(row);
+            if (sha.startsWith(prefix)) {
+                found.add(sha);
+            }
+        }
+        if (!CommitGraph.complete(objectDir)) {
+            for (String sha : ObjectStore.list(objectDir, ObjectStore.COMMIT)) {
+                if (sha.startsWith(prefix)) {
+                    found.add(sha);
+                }
+            }
+        }
+        for (String sha : found) {
+            if (result.size() < limit
+                    && ObjectStore.contains(objectDir, ObjectStore.COMMIT, sha)) {
+                result.add(sha);
+            }
+        }
+        return result;
+    }
+
+    /** Returns the number of rows of the commit-graph of OBJECTDIR that its
+     *  index covers. */
+    public static int count(File objectDir) {
+        return open(objectDir).count;
+    }
+
+    /** Returns the commit-graph row of the commit SHA of OBJECTDIR, or
+     *  CommitGraph.NONE if the index does not hold it. */
+    public static int row(File objectDir, String sha) {
+        CommitIndex index = open(objectDir);
+        if (index.map == null || sha.length() != UID_LENGTH) {
+            return CommitGraph.NONE;
+        }
+        int pos = index.first(sha);
+        if (pos < index.count && index.compare(pos, sha) == 0) {
+            return index.map.getInt(ID_START + index.count * ID_BYTES + pos * 4);
+        }
+        return CommitGraph.NONE;
+    }
+
+    /** Returns the position of the first id not less than PREFIX, found
+     *  through the fanout table and a binary search. */
+    private int first(String prefix) {
+        int lo = 0;
+        int hi = count;
+        if (prefix.length() >= 2) {
+            int first = Integer.parseInt(prefix.substring(0, 2), 16);
+            lo = first == 0 ? 0 : map.getInt(HEADER + (first - 1) * 4);
+            hi = map.getInt(HEADER + first * 4);
+        }
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compare(mid, prefix) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Adds up to LIMIT ids of the index that start with PREFIX to RESULT. */
+    private void search(String prefix, int limit, List<String> result) {
+        if (map == null) {
+            return;
+        }
+        int lo = first(prefix);
+        byte[] id = new byte[ID_BYTES];
+        for (int pos = lo; pos < count && result.size() < limit; pos++) {
+            if (compare(pos, prefix) != 0) {
+                break;
+            }
+            map.get(ID_START + pos * ID_BYTES, id);
+            result.add(ObjectStore.toHex(id, 0));
+        }
+    }
+
+    /** Compares the first digits of the id at POS with PREFIX. */
+    private int compare(int pos, String prefix) {
+        int start = ID_START + pos * ID_BYTES;
+        for (int i = 0; i < prefix.length(); i++) {
+            int b = map.get(start + i / 2) & 0xff;
+            int digit = i % 2 == 0 ? b >>> 4 : b & 0xf;
+            int cmp = digit - Character.digit(prefix.charAt(i), 16);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    /** Rewrites the index of OBJECTDIR if the commit-graph has outgrown it
+     *  by more than TAIL_LIMIT commits. */
+    public static void update(File objectDir) {
+        if (CommitGraph.open(objectDir).count() - open(objectDir).count > TAIL_LIMIT) {
+            write(objectDir);
+        }
+    }
+
+    /** Writes a new index over every commit in the commit-graph of OBJECTDIR. */
+    public static void write(File objectDir) {
+        CommitGraph graph = CommitGraph.open(objectDir);
+        int total = graph.count();
+        byte[] ids = new byte[total * ID_BYTES];
+        Integer[] order = new Integer[total];
+        for (int i = 0; i < total; i++) {
+            graph.copyId(i, ids, i * ID_BYTES);
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> MultiPackIndex.compareIds(ids, a, b));
+        int[] fanout = new int[256];
+        for (int i = 0; i < total; i++) {
+            fanout[ids[i * ID_BYTES] & 0xff] += 1;
+        }
+        for (int i = 1; i < 256; i++) {
+            fanout[i] += fanout[i - 1];
+        }
+        File file = indexFile(objectDir);
+        File temp = join(objectDir, "commit-index.tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(total);
+            for (int n : fanout) {
+                out.writeInt(n);
+            }
+            for (int i : order) {
+                out.write(ids, i * ID_BYTES, ID_BYTES);
+            }
+            for (int i : order) {
+                out.writeInt(i);
+            }
+        } catch (IOException e) {
+            throw error("Cannot write %s: %s", file, e.getMessage());
+        }
+        ObjectStore.replace(temp, file);
+        OPENED.remove(objectDir.getAbsolutePath());
+    }
+}
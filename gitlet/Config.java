@@ -0,0 +1,126 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+import static gitlet.Utils.*;
+
+/** Settings of a repository, kept as key=value lines in .gitlet/config.
+ *  Every setting has a default, so the file only holds what the user
+ *  changed with the config command.
+ *
+ *  @author Jeffrey Huang
+ */
+public class Config {
+
+    /** The config file. */
+    public static final File CONFIGFILE = join(Repository.GITLET_DIR, "config");
+
+    /** Deflate level of loose objects and packs, 0 (stored) to 9 (smallest).
+     *  At 0 loose file contents are written raw, so checkout can copy them
+     *  without inflating. */
+    public static final String COMPRESSION = "core.compression";
+
+    /** If true, checkout hard-links files to their raw loose contents
+     *  instead of copying them. Linked files are read-only, since writing
+     *  one in place would change the stored contents too. */
+    public static final String CHECKOUT_HARDLINKS = "checkout.hardlinks";
+
+    /** Number of threads that write working files when checkout or reset
+     *  writes many at once; 1 writes them one at a time. */
+    public static final String CHECKOUT_WORKERS = "checkout.workers";
+
+    /** Number of earlier objects repack tries as delta bases for each object. */
+    public static final String PACK_WINDOW = "pack.window";
+
+    /** Longest chain of deltas repack builds, so reads stay fast. */
+    public static final String PACK_DEPTH = "pack.depth";
+
+    /** Files larger than this many bytes are stored as chunks; 0 turns
+     *  chunking off. */
+    public static final String CHUNK_THRESHOLD = "core.chunkThreshold";
+
+    /** Format of the repository's objects; see Migration. Repositories
+     *  that predate the setting are format 1. */
+    public static final String FORMAT = "core.format";
+
+    /** Settings read from CONFIGFILE, loaded on first use. */
+    private static Properties settings;
+
+    /** Returns the value of KEY, or DEFAULT if it is not set. */
+    public static String get(String key, String defaultValue) {
+        return load().getProperty(key, defaultValue);
+    }
+
+    /** Returns the integer value of KEY, or DEFAULT if it is not set. */
+    public static int getInt(String key, int defaultValue) {
+        String value = get(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw error("Bad value for %s: %s", key, value);
+        }
+    }
+
+    /** Returns the boolean value of KEY, or DEFAULT if it is not set. */
+    public static boolean getBoolean(String key, boolean defaultValue) {
+        String value = get(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        return value.trim().equals("true");
+    }
+
+    /** Returns the integer value of KEY in the repository GITLETDIR, such
+     *  as a remote, or DEFAULT if it is not set there. */
+    public static int getInt(File gitletDir, String key, int defaultValue) {
+        String value = read(join(gitletDir, "config")).getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw error("Bad value for %s: %s", key, value);
+        }
+    }
+
+    /** Sets KEY to VALUE and saves the config file. */
+    public static void set(String key, String value) {
+        load().setProperty(key, value);
+        try (OutputStream out = new FileOutputStream(CONFIGFILE)) {
+            settings.store(out, null);
+        } catch (IOException e) {
+            throw error("Cannot write %s: %s", CONFIGFILE, e.getMessage());
+        }
+    }
+
+    /** Returns the settings, reading CONFIGFILE if it has not been read. */
+    private static synchronized Properties load() {
+        if (settings == null) {
+            settings = read(CONFIGFILE);
+        }
+        return settings;
+    }
+
+    /** Returns the settings in FILE, which need not exist. */
+    private static Properties read(File file) {
+        Properties result = new Properties();
+        if (file.isFile()) {
+            try (InputStream in = new FileInputStream(file)) {
+                result.load(in);
+            } catch (IOException e) {
+                throw error("Cannot read %s: %s", file, e.getMessage());
+            }
+        }
+        return result;
+    }
+}
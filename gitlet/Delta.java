@@ -0,0 +1,144 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+
+import static gitlet.Utils.*;
+
+/** Binary deltas between two versions of a file. A delta is the size of
+ *  the base and of the result, followed by instructions: a byte with the
+ *  high bit set means copy (offset and length follow) a range of the
+ *  base, otherwise the byte is the length of literal bytes that follow.
+ *  Numbers are written as varints, seven bits per byte.
+ *
+ *  @author Jeffrey Huang
+ */
+public class Delta {
+
+    /** Length of the blocks of the base that are indexed for matching. */
+    private static final int BLOCK = 16;
+
+    /** Longest run of literal bytes in one instruction. */
+    private static final int MAX_INSERT = 127;
+
+    /** Marks a copy instruction. */
+    private static final int COPY = 0x80;
+
+    /** Returns a delta that turns BASE into TARGET. */
+    public static byte[] create(byte[] base, byte[] target) {
+        HashMap<Integer, Integer> blocks = new HashMap<>();
+        for (int i = 0; i + BLOCK <= base.length; i += BLOCK) {
+            blocks.putIfAbsent(hash(base, i), i);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarint(out, base.length);
+        writeVarint(out, target.length);
+        int pos = 0;
+        int insertStart = 0;
+        while (pos + BLOCK <= target.length) {
+            Integer match = blocks.get(hash(target, pos));
+            if (match == null || !same(base, match, target, pos, BLOCK)) {
+                pos += 1;
+                continue;
+            }
+            int start = match;
+            int length = BLOCK;
+            while (start + length < base.length && pos + length < target.length
+                    && base[start + length] == target[pos + length]) {
+                length += 1;
+            }
+            while (start > 0 && pos > insertStart && base[start - 1] == target[pos - 1]) {
+                start -= 1;
+                pos -= 1;
+                length += 1;
+            }
+            writeInsert(out, target, insertStart, pos);
+            out.write(COPY);
+            writeVarint(out, start);
+            writeVarint(out, length);
+            pos += length;
+            insertStart = pos;
+        }
+        writeInsert(out, target, insertStart, target.length);
+        return out.toByteArray();
+    }
+
+    /** Returns the result of applying DELTA to BASE. */
+    public static byte[] apply(byte[] base, byte[] delta) {
+        int[] pos = {0};
+        if (readVarint(delta, pos) != base.length) {
+            throw error("Delta does not match its base.");
+        }
+        byte[] result = new byte[readVarint(delta, pos)];
+        int n = 0;
+        while (pos[0] < delta.length) {
+            int op = delta[pos[0]++] & 0xff;
+            if ((op & COPY) != 0) {
+                int offset = readVarint(delta, pos);
+                int length = readVarint(delta, pos);
+                System.arraycopy(base, offset, result, n, length);
+                n += length;
+            } else {
+                System.arraycopy(delta, pos[0], result, n, op);
+                pos[0] += op;
+                n += op;
+            }
+        }
+        if (n != result.length) {
+            throw error("Corrupt delta.");
+        }
+        return result;
+    }
+
+    /** Writes the bytes of TARGET from START to END as literal instructions. */
+    private static void writeInsert(ByteArrayOutputStream out, byte[] target,
+                                    int start, int end) {
+        while (start < end) {
+            int length = Math.min(MAX_INSERT, end - start);
+            out.write(length);
+            out.write(target, start, length);
+            start += length;
+        }
+    }
+
+    /** Returns a hash of the BLOCK bytes of DATA starting at START. */
+    private static int hash(byte[] data, int start) {
+        int h = 0;
+        for (int i = start; i < start + BLOCK; i++) {
+            h = h * 31 + data[i];
+        }
+        return h;
+    }
+
+    /** Returns true if the LENGTH bytes of A at I equal those of B at J. */
+    private static boolean same(byte[] a, int i, byte[] b, int j, int length) {
+        for (int k = 0; k < length; k++) {
+            if (a[i + k] != b[j + k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Writes VALUE to OUT seven bits at a time. */
+    static void writeVarint(ByteArrayOutputStream out, long value) {
+        while (value >= 0x80) {
+            out.write((int) (value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    /** Returns the varint at POS[0] in DATA and moves POS[0] past it. */
+    static int readVarint(byte[] data, int[] pos) {
+        int value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = data[pos[0]++] & 0xff;
+            value |= (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
@@ -0,0 +1,493 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import static gitlet.Utils.*;
+
+/** A process that watches the working directory and journals the paths
+ *  that change, so a command learns what changed since the last one
+ *  without looking at every file. The journal in .gitlet starts with a
+ *  header naming the monitor's session, its process id and start time,
+ *  followed by a line per change: "p PATH" for a path created or
+ *  modified, "d PATH" for one removed, with everything under it. An offset
+ *  into the journal of a session is a token: everything after it changed
+ *  since.
+ *
+ *  A command drops a cookie file in a directory the monitor watches and
+ *  waits for its "c NAME" line, so every change made before the command
+ *  started is in the journal before the line. It then replays the lines
+ *  since its last token over the working files it saved then, and trusts
+ *  the StatCache's ids of files with no line. If the monitor is not
+ *  running, does not answer in time, or has started a new session, as it
+ *  does when it overflows, its journal grows too long or .gitletignore
+ *  changes, the command scans the whole working directory instead.
+ *
+ *  @author Jeffrey Huang
+ */
+public class FsMonitor {
+
+    /** The journal of changes. */
+    public static final File JOURNAL = join(Repository.GITLET_DIR, "fsmonitor");
+
+    /** The token the last command read the journal up to. */
+    public static final File TOKENFILE = join(Repository.GITLET_DIR, "fsmonitor-token");
+
+    /** The working files at that token, a path per line. */
+    public static final File FILESFILE = join(Repository.GITLET_DIR, "fsmonitor-files");
+
+    /** The directory where commands drop their cookies. */
+    private static final File COOKIE_DIR = join(Repository.GITLET_DIR, "fsmonitor-cookies");
+
+    /** Start of the journal's first line, before the session. */
+    private static final String HEADER = "gitlet-fsmonitor 1 ";
+
+    /** Size of journal past which the monitor starts a new session. */
+    private static final long MAX_JOURNAL = 4 << 20;
+
+    /** How long a command waits for its cookie before scanning instead. */
+    private static final long COOKIE_WAIT_MILLIS = 2000;
+
+    /** What the current command learned, once asked. */
+    private static Query current;
+
+    /** The service the monitor watches with. */
+    private final WatchService watcher;
+
+    /** The working directory. */
+    private final Path root = Repository.CWD.toPath();
+
+    /** The cookie directory. */
+    private final Path cookies = COOKIE_DIR.toPath();
+
+    /** Each directory watched, by its key. */
+    private final HashMap<WatchKey, Path> dirs = new HashMap<>();
+
+    /** The rules of .gitletignore when the session started. */
+    private IgnoreRules rules;
+
+    /** The session being journaled. */
+    private String session;
+
+    /** Sessions started by this monitor. */
+    private int sessions;
+
+    /** The journal, open for appending. */
+    private FileOutputStream out;
+
+    /** Bytes in the journal. */
+    private long size;
+
+    /** What a command knows of the working directory. */
+    private static class Query {
+        /** The working files, not ignored. */
+        private TreeSet<String> files;
+        /** The paths that may have changed since the last token, or null
+         *  if all may have. */
+        private Set<String> changed;
+        /** The token to save, or null if the monitor was not used. */
+        private String token;
+        /** True if FILES differ from FILESFILE. */
+        private boolean filesChanged;
+    }
+
+    /** A monitor watching with WATCHER. */
+    private FsMonitor(WatchService watcher) {
+        this.watcher = watcher;
+    }
+
+    /** Returns the working files, not ignored, in sorted order. */
+    public static TreeSet<String> files() {
+        return query().files;
+    }
+
+    /** Returns the contents id of the working file PATH, or null if there
+     *  is no such file. If the monitor saw no change to the file since the
+     *  last token, the StatCache's id is taken without looking at it. */
+    public static String id(String path) {
+        Query query = query();
+        if (query.changed != null && !query.changed.contains(path)
+                && query.files.contains(path)) {
+            String id = StatCache.recordedId(path);
+            if (id != null) {
+                return id;
+            }
+        }
+        return StatCache.id(path);
+    }
+
+    /** Writes the token and working files the current command read, if it
+     *  used the monitor. Called after the StatCache is saved, so a token
+     *  is never ahead of the ids it vouches for. */
+    public static void save() {
+        if (current == null || current.token == null || !Repository.GITLET_DIR.isDirectory()) {
+            return;
+        }
+        if (current.filesChanged) {
+            replace(FILESFILE, String.join("\n", current.files));
+        }
+        replace(TOKENFILE, current.token);
+        current.token = null;
+    }
+
+    /** Starts a monitor of the working directory in a process of its own,
+     *  unless one is running, and waits until it is watching. */
+    public static void start() {
+        if (liveSession() != null) {
+            System.out.println("A file-system monitor is already running.");
+            return;
+        }
+        List<String> command = List.of(
+                ProcessHandle.current().info().command().orElse("java"),
+                "-cp", System.getProperty("java.class.path"),
+                Main.class.getName(), "fsmonitor", "--run");
+        Process monitor;
+        try {
+            monitor = new ProcessBuilder(command).directory(Repository.CWD)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .redirectError(ProcessBuilder.Redirect.DISCARD).start();
+        } catch (IOException e) {
+            throw error("Cannot start the file-system monitor: %s", e.getMessage());
+        }
+        String session = liveSession();
+        while (session == null || pid(session) != monitor.pid()) {
+            if (!monitor.isAlive()) {
+                throw error("The file-system monitor stopped with status %d.",
+                        monitor.exitValue());
+            }
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            session = liveSession();
+        }
+    }
+
+    /** Stops the monitor of the working directory and waits for it to
+     *  exit. */
+    public static void stop() {
+        String session = liveSession();
+        if (session == null) {
+            System.out.println("No file-system monitor is running.");
+            return;
+        }
+        ProcessHandle.of(pid(session)).ifPresent(monitor -> {
+            monitor.destroy();
+            monitor.onExit().join();
+        });
+    }
+
+    /** Watches the working directory until the monitor is stopped, another
+     *  takes over the journal or the repository is removed. */
+    public static void run() {
+        if (liveSession() != null) {
+            System.out.println("A file-system monitor is already running.");
+            return;
+        }
+        try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+            new FsMonitor(watcher).watch();
+        } catch (IOException e) {
+            throw error("Cannot watch %s: %s", Repository.CWD, e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Journals changes as they come, a batch of events at a time. */
+    private void watch() throws IOException, InterruptedException {
+        restart();
+        while (Repository.GITLET_DIR.isDirectory() && session.equals(session(JOURNAL))) {
+            WatchKey key = watcher.poll(1, TimeUnit.SECONDS);
+            List<String> lines = new ArrayList<>();
+            List<String> cookieLines = new ArrayList<>();
+            boolean again = false;
+            for (; key != null; key = watcher.poll()) {
+                again |= handle(key, lines, cookieLines);
+            }
+            if (again || size > MAX_JOURNAL) {
+                restart();
+                lines.clear();
+            }
+            lines.addAll(cookieLines);
+            append(lines);
+        }
+        out.close();
+    }
+
+    /** Adds the lines for the events of KEY to LINES, and those of cookies
+     *  to COOKIELINES, which are written after the others, once every event
+     *  delivered before them is taken. Returns true if a new session must
+     *  start. */
+    private boolean handle(WatchKey key, List<String> lines, List<String> cookieLines)
+            throws IOException {
+        Path dir = dirs.get(key);
+        boolean again = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                again = true;
+                continue;
+            }
+            if (dir == null) {
+                continue;
+            }
+            Path child = dir.resolve((Path) event.context());
+            if (dir.equals(cookies)) {
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                    cookieLines.add("c " + child.getFileName());
+                }
+                continue;
+            }
+            String path = relative(child);
+            if (path.equals(".gitlet")) {
+                continue;
+            }
+            if (path.equals(IgnoreRules.FILENAME)) {
+                again = true;
+            }
+            if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                lines.add("d " + path);
+                continue;
+            }
+            boolean directory = Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS);
+            if (rules.ignored(path, directory)) {
+                continue;
+            }
+            lines.add("p " + path);
+            if (directory && event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                try {
+                    register(child, lines);
+                } catch (IOException e) {
+                    if (Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                        throw e;
+                    }
+                }
+            }
+        }
+        if (!key.reset()) {
+            dirs.remove(key);
+        }
+        return again;
+    }
+
+    /** Watches DIR and every directory below it that is not ignored. If
+     *  LINES is not null, adds a line for each file found to it. */
+    private void register(Path dir, List<String> lines) throws IOException {
+        dirs.put(dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY), dir);
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+            for (Path entry : entries) {
+                String path = relative(entry);
+                if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                    if (!path.equals(".gitlet") && !rules.ignored(path, true)) {
+                        register(entry, lines);
+                    }
+                } else if (lines != null && !rules.ignored(path, false)) {
+                    lines.add("p " + path);
+                }
+            }
+        }
+    }
+
+    /** Watches the working directory afresh and starts a new journal, so
+     *  the next command scans everything. */
+    private void restart() throws IOException {
+        for (WatchKey key : dirs.keySet()) {
+            key.cancel();
+        }
+        dirs.clear();
+        rules = IgnoreRules.load(Repository.CWD);
+        COOKIE_DIR.mkdir();
+        dirs.put(cookies.register(watcher, StandardWatchEventKinds.ENTRY_CREATE), cookies);
+        register(root, null);
+        sessions += 1;
+        session = ProcessHandle.current().pid() + " " + System.currentTimeMillis()
+                + " " + sessions;
+        if (out != null) {
+            out.close();
+        }
+        replace(JOURNAL, HEADER + session + "\n");
+        out = new FileOutputStream(JOURNAL, true);
+        size = JOURNAL.length();
+    }
+
+    /** Appends LINES to the journal. */
+    private void append(List<String> lines) throws IOException {
+        if (lines.isEmpty()) {
+            return;
+        }
+        byte[] data = (String.join("\n", lines) + "\n").getBytes(StandardCharsets.UTF_8);
+        out.write(data);
+        out.flush();
+        size += data.length;
+    }
+
+    /** Returns the path of FILE relative to the working directory. */
+    private String relative(Path file) {
+        return root.relativize(file).toString().replace(File.separatorChar, '/');
+    }
+
+    /** Returns what the current command knows, asking the monitor or
+     *  scanning the working directory the first time. */
+    private static Query query() {
+        if (current != null) {
+            return current;
+        }
+        current = new Query();
+        String session = liveSession();
+        if (session != null) {
+            String[] token = TOKENFILE.isFile() && FILESFILE.isFile()
+                    ? readContentsAsString(TOKENFILE).split(" ") : new String[0];
+            boolean resume = token.length == 4
+                    && session.equals(token[0] + " " + token[1] + " " + token[2]);
+            long from = resume ? Long.parseLong(token[3]) : 0;
+            List<String> lines = new ArrayList<>();
+            long end = await(session, from, lines);
+            if (end >= 0) {
+                current.token = session + " " + end;
+                if (resume) {
+                    replay(lines);
+                    return current;
+                }
+            }
+        }
+        current.files = new TreeSet<>(WorktreeScanner.files(Repository.CWD));
+        current.filesChanged = true;
+        return current;
+    }
+
+    /** Sets the current files to those saved, updated by the journal LINES
+     *  since, and notes the paths they name as changed. */
+    private static void replay(List<String> lines) {
+        current.files = new TreeSet<>();
+        for (String path : readContentsAsString(FILESFILE).split("\n")) {
+            if (!path.isEmpty()) {
+                current.files.add(path);
+            }
+        }
+        current.changed = new HashSet<>();
+        for (String line : lines) {
+            String path = line.substring(2);
+            if (line.startsWith("c ")) {
+                continue;
+            }
+            if (line.startsWith("d ")) {
+                current.filesChanged |= current.files.subSet(path + "/", path + "0").size() > 0;
+                current.files.subSet(path + "/", path + "0").clear();
+            }
+            current.changed.add(path);
+            if (Files.isRegularFile(join(Repository.CWD, path).toPath())) {
+                current.filesChanged |= current.files.add(path);
+            } else {
+                current.filesChanged |= current.files.remove(path);
+            }
+        }
+    }
+
+    /** Drops a cookie and reads the journal of SESSION from offset FROM into
+     *  LINES until the cookie's line. Returns the offset after that line,
+     *  or -1 if it does not come in time or the session ends. */
+    private static long await(String session, long from, List<String> lines) {
+        String cookie = ProcessHandle.current().pid() + "-" + System.nanoTime();
+        File cookieFile = join(COOKIE_DIR, cookie);
+        if (!COOKIE_DIR.isDirectory()) {
+            return -1;
+        }
+        writeContents(cookieFile, "");
+        try {
+            long deadline = System.currentTimeMillis() + COOKIE_WAIT_MILLIS;
+            long position = from;
+            while (System.currentTimeMillis() < deadline) {
+                try (RandomAccessFile in = new RandomAccessFile(JOURNAL, "r")) {
+                    if (!(HEADER + session).equals(in.readLine())) {
+                        return -1;
+                    }
+                    position = Math.max(position, in.getFilePointer());
+                    byte[] data = new byte[(int) Math.max(0, in.length() - position)];
+                    in.seek(position);
+                    in.readFully(data);
+                    int start = 0;
+                    for (int i = 0; i < data.length; i++) {
+                        if (data[i] != '\n') {
+                            continue;
+                        }
+                        String line = new String(data, start, i - start, StandardCharsets.UTF_8);
+                        start = i + 1;
+                        if (line.equals("c " + cookie)) {
+                            return position + start;
+                        }
+                        lines.add(line);
+                    }
+                    position += start;
+                } catch (IOException e) {
+                    return -1;
+                }
+                Thread.sleep(1);
+            }
+            return -1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return -1;
+        } finally {
+            cookieFile.delete();
+        }
+    }
+
+    /** Returns the session of the journal if its monitor is running, or
+     *  else null. */
+    private static String liveSession() {
+        String session = session(JOURNAL);
+        if (session == null) {
+            return null;
+        }
+        return ProcessHandle.of(pid(session)).map(ProcessHandle::isAlive).orElse(false)
+                ? session : null;
+    }
+
+    /** Returns the session named by the header of JOURNAL, or null if it
+     *  has none. */
+    private static String session(File journal) {
+        try (RandomAccessFile in = new RandomAccessFile(journal, "r")) {
+            String header = in.readLine();
+            if (header == null || !header.startsWith(HEADER)
+                    || !header.matches(".* \\d+ \\d+ \\d+")) {
+                return null;
+            }
+            return header.substring(HEADER.length());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /** Returns the process id of the monitor of SESSION. */
+    private static long pid(String session) {
+        return Long.parseLong(session.substring(0, session.indexOf(' ')));
+    }
+
+    /** Replaces FILE with CONTENTS. */
+    private static void replace(File file, String contents) {
+        File temp = new File(file.getPath() + ".tmp");
+        writeContents(temp, contents);
+        ObjectStore.replace(temp, file);
+    }
+}
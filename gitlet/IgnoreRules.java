@@ -0,0 +1,136 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static gitlet.Utils.*;
+
+/** The patterns of a .gitletignore file, compiled into regular expressions
+ *  once so each path is tested without parsing them again. The file has a
+ *  pattern per line, in the style of .gitignore:
+ *  - blank lines and lines starting with # are skipped;
+ *  - a pattern ending in / matches only directories;
+ *  - a pattern with a / anywhere else is matched against the whole path
+ *    from the working directory, and any other against the last name only;
+ *  - * and ? match any characters but /, ** also matches /, and [...]
+ *    matches one character of a class, [!...] one not in it;
+ *  - a pattern starting with ! takes back what earlier patterns ignored.
+ *  The last pattern that matches a path decides. Paths within an ignored
+ *  directory are never looked at, so they cannot be taken back.
+ *
+ *  @author Jeffrey Huang
+ */
+public class IgnoreRules {
+
+    /** Name of the file of patterns in the working directory. */
+    public static final String FILENAME = ".gitletignore";
+
+    /** One compiled pattern. */
+    private static class Rule {
+        /** The expression a matching path or name matches. */
+        private Pattern pattern;
+        /** True if the rule takes paths back. */
+        private boolean negated;
+        /** True if the rule matches only directories. */
+        private boolean directoryOnly;
+        /** True if the rule is matched against the whole path. */
+        private boolean anchored;
+    }
+
+    /** The rules in the order of the file. */
+    private final List<Rule> rules = new ArrayList<>();
+
+    /** Returns the rules of the .gitletignore in the directory ROOT, which
+     *  are none if it has no such file. */
+    public static IgnoreRules load(File root) {
+        IgnoreRules result = new IgnoreRules();
+        File file = join(root, FILENAME);
+        if (!file.isFile()) {
+            return result;
+        }
+        for (String line : readContentsAsString(file).split("\r?\n")) {
+            result.add(line);
+        }
+        return result;
+    }
+
+    /** Compiles the pattern LINE and adds it after the rules so far. */
+    private void add(String line) {
+        String text = line.strip();
+        if (text.isEmpty() || text.startsWith("#")) {
+            return;
+        }
+        Rule rule = new Rule();
+        if (text.startsWith("!")) {
+            rule.negated = true;
+            text = text.substring(1);
+        }
+        if (text.endsWith("/")) {
+            rule.directoryOnly = true;
+            text = text.substring(0, text.length() - 1);
+        }
+        rule.anchored = text.contains("/");
+        if (text.startsWith("/")) {
+            text = text.substring(1);
+        }
+        if (text.isEmpty()) {
+            return;
+        }
+        rule.pattern = Pattern.compile(regex(text));
+        rules.add(rule);
+    }
+
+    /** Returns true if the rules ignore PATH, relative to the working
+     *  directory, which is a DIRECTORY or a file. */
+    public boolean ignored(String path, boolean directory) {
+        String name = path.substring(path.lastIndexOf('/') + 1);
+        boolean result = false;
+        for (Rule rule : rules) {
+            if (rule.directoryOnly && !directory) {
+                continue;
+            }
+            if (rule.pattern.matcher(rule.anchored ? path : name).matches()) {
+                result = !rule.negated;
+            }
+        }
+        return result;
+    }
+
+    /** Returns the regular expression of the pattern GLOB. */
+    private static String regex(String glob) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*' && i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                i += 1;
+                if (i + 1 < glob.length() && glob.charAt(i + 1) == '/') {
+                    i += 1;
+                    result.append("(?:.*/)?");
+                } else {
+                    result.append(".*");
+                }
+            } else if (c == '*') {
+                result.append("[^/]*");
+            } else if (c == '?') {
+                result.append("[^/]");
+            } else if (c == '[' && glob.indexOf(']', i + 2) > 0) {
+                int end = glob.indexOf(']', i + 2);
+                String members = glob.substring(i + 1, end);
+                if (members.startsWith("!")) {
+                    members = "^" + members.substring(1);
+                }
+                result.append('[').append(members.replace("\\", "\\\\")
+                        .replace("[", "\\[")).append(']');
+                i = end;
+            } else if (c == '\\' && i + 1 < glob.length()) {
+                i += 1;
+                result.append(Pattern.quote(String.valueOf(glob.charAt(i))));
+            } else {
+                result.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return result.toString();
+    }
+}
@@ -44,10 +44,7 @@ public class Main {
                 Repository.commit(message);
                 break;
             case "log":
-                if (correctOperands(1, args.length) || checkGitlet()) {
-                    return;
-                }
-                Repository.log();
+                log(args);
                 break;
             case "checkout":
                 if (checkGitlet()) {
@@ -87,6 +84,13 @@ public class Main {
                 Repository.globalLog();
                 break;
             case "find":
+                if (args.length == 3 && args[1].equals("--word")) {
+                    if (checkGitlet()) {
+                        return;
+                    }
+                    Repository.findWord(args[2]);
+                    break;
+                }
                 if (correctOperands(2, args.length) || checkGitlet()) {
                     return;
                 }
@@ -156,9 +160,108 @@ public class Main {
                 }
                 Repository.pull(args[1], args[2]);
                 break;
+            case "repack":
+                if (args.length == 2 && !args[1].equals("-a") || args.length > 2) {
+                    System.out.println("Incorrect operands.");
+                    return;
+                }
+                if (checkGitlet()) {
+                    return;
+                }
+                Repository.repack(args.length == 2);
+                break;
+            case "config":
+                if (args.length != 2 && args.length != 3) {
+                    System.out.println("Incorrect operands.");
+                    return;
+                }
+                if (checkGitlet()) {
+                    return;
+                }
+                if (args.length == 2) {
+                    Repository.config(args[1]);
+                } else {
+                    Repository.config(args[1], args[2]);
+                }
+                break;
+            case "pack-refs":
+                if (correctOperands(1, args.length) || checkGitlet()) {
+                    return;
+                }
+                Repository.packRefs();
+                break;
+            case "merge-base":
+                boolean all = args.length == 4 && args[1].equals("--all");
+                if (args.length != 3 && !all) {
+                    System.out.println("Incorrect operands.");
+                    return;
+                }
+                if (checkGitlet()) {
+                    return;
+                }
+                Repository.mergeBase(args[args.length - 2], args[args.length - 1], all);
+                break;
+            case "fsmonitor":
+                if (args.length > 2 || args.length == 2 && !args[1].equals("--stop")
+                        && !args[1].equals("--run")) {
+                    System.out.println("Incorrect operands.");
+                    return;
+                }
+                if (checkGitlet()) {
+                    return;
+                }
+                Repository.fsmonitor(args.length == 2 ? args[1] : "");
+                break;
+            case "migrate":
+                if (correctOperands(1, args.length)) {
+                    return;
+                }
+                if (!Repository.GITLET_DIR.exists()) {
+                    System.out.println("Not in an initialized Gitlet directory.");
+                    return;
+                }
+                Repository.migrate();
+                break;
             default:
                 System.out.println("No command with that name exists.");
         }
+        StatCache.save();
+        FsMonitor.save();
+    }
+
+    /** Runs log with ARGS of the form log [-n COUNT] [--skip COUNT]
+     *  [--format=FORMAT] [-- FILE], the options in any order. */
+    private static void log(String[] args) {
+        int limit = Integer.MAX_VALUE;
+        int skip = 0;
+        String format = null;
+        String filename = null;
+        try {
+            for (int i = 1; i < args.length; i++) {
+                if (args[i].equals("-n") && i + 1 < args.length) {
+                    limit = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--skip") && i + 1 < args.length) {
+                    skip = Integer.parseInt(args[++i]);
+                } else if (args[i].startsWith("--format=")) {
+                    format = args[i].substring("--format=".length());
+                } else if (args[i].equals("--") && i + 2 == args.length) {
+                    filename = args[++i];
+                } else {
+                    limit = -1;
+                    break;
+                }
+            }
+        } catch (NumberFormatException e) {
+            limit = -1;
+        }
+        if (limit < 0 || skip < 0) {
+            System.out.println("Incorrect operands.");
+            return;
+        }
+        if (checkGitlet()) {
+            return;
+        }
+        Repository.log(limit, skip, format, filename);
     }
 
     public static boolean checkGitlet() {
@@ -166,6 +269,10 @@ public class Main {
             System.out.println("Not in an initialized Gitlet directory.");
             return true;
         }
+        if (!Migration.isCurrent(Repository.GITLET_DIR)) {
+            System.out.println("Please run migrate first.");
+            return true;
+        }
         return false;
     }
 
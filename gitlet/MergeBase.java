@@ -0,0 +1,206 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/** Finds the best common ancestors of two commits. Both commits are walked
+ *  together, newest generation first, each commit painted with the side or
+ *  sides that reach it. A commit both sides reach is a candidate, and its
+ *  own ancestors are painted stale so the walk ends once only stale commits
+ *  remain, rather than at the root. Candidates that are ancestors of other
+ *  candidates are then dropped, which leaves more than one merge base only
+ *  after criss-cross merges. Generation numbers come from the commit-graph;
+ *  a commit it lacks counts as newer than any it has.
+ *
+ *  @author Jeffrey Huang
+ */
+public class MergeBase {
+
+    /** Paint of commits reached from the first commit. */
+    private static final int ONE = 1;
+
+    /** Paint of commits reached from the second commit. */
+    private static final int TWO = 2;
+
+    /** Paint of ancestors of a candidate, which cannot be best. */
+    private static final int STALE = 4;
+
+    /** Paint of commits already taken as candidates. */
+    private static final int RESULT = 8;
+
+    /** Generation of a commit missing from the commit-graph. */
+    private static final int UNKNOWN = Integer.MAX_VALUE;
+
+    /** The repository's objects. */
+    private final File objectDir;
+
+    /** The commit-graph of OBJECTDIR. */
+    private final CommitGraph graph;
+
+    /** Generation and time of each commit seen, by id. */
+    private final HashMap<String, long[]> keys = new HashMap<>();
+
+    /** A walker of the commits in OBJECTDIR. */
+    private MergeBase(File objectDir) {
+        this.objectDir = objectDir;
+        this.graph = CommitGraph.open(objectDir);
+    }
+
+    /** Returns the best common ancestors of the commits ONE and TWO of
+     *  OBJECTDIR, best first: highest generation, then newest, then by id.
+     *  The list is empty if they share no history. */
+    public static List<String> bases(File objectDir, String one, String two) {
+        MergeBase walker = new MergeBase(objectDir);
+        List<String> candidates = walker.paint(one, two);
+        List<String> result = new ArrayList<>();
+        for (String candidate : candidates) {
+            boolean redundant = false;
+            for (String other : candidates) {
+                if (!other.equals(candidate) && walker.reaches(other, candidate)) {
+                    redundant = true;
+                    break;
+                }
+            }
+            if (!redundant) {
+                result.add(candidate);
+            }
+        }
+        result.sort(walker.newestFirst());
+        return result;
+    }
+
+    /** Returns the best common ancestor of ONE and TWO of OBJECTDIR, or null
+     *  if they share no history. After criss-cross merges, where several
+     *  are equally good, the newest is chosen. */
+    public static String base(File objectDir, String one, String two) {
+        List<String> all = bases(objectDir, one, two);
+        return all.isEmpty() ? null : all.get(0);
+    }
+
+    /** Returns true if the commit ANCESTOR of OBJECTDIR is DESCENDANT or one
+     *  of its ancestors. Stored reachability bitmaps answer this when there
+     *  are any; otherwise history is walked. */
+    public static boolean isAncestor(File objectDir, String ancestor, String descendant) {
+        int row = CommitGraph.open(objectDir).row(ancestor);
+        if (row != CommitGraph.NONE && ReachabilityBitmaps.exist(objectDir)) {
+            Bitmap reachable = ReachabilityBitmaps.reachable(objectDir, descendant);
+            if (reachable != null) {
+                return reachable.get(row);
+            }
+        }
+        return new MergeBase(objectDir).reaches(descendant, ancestor);
+    }
+
+    /** Returns the commits ONE and TWO both reach that no other such commit
+     *  reaches first, walking newest generation first. The walk ends when
+     *  every queued commit is stale, which is tracked as a count of the
+     *  queue entries whose commit is not, so no step scans the queue. */
+    private List<String> paint(String one, String two) {
+        HashMap<String, Integer> paint = new HashMap<>();
+        PriorityQueue<String> queue = new PriorityQueue<>(newestFirst());
+        HashMap<String, Integer> queued = new HashMap<>();
+        List<String> candidates = new ArrayList<>();
+        paint.put(one, ONE);
+        paint.merge(two, TWO, (a, b) -> a | b);
+        queue.add(one);
+        queue.add(two);
+        queued.merge(one, 1, Integer::sum);
+        queued.merge(two, 1, Integer::sum);
+        int fresh = 2;
+        while (fresh > 0) {
+            String commit = queue.remove();
+            queued.merge(commit, -1, Integer::sum);
+            if ((paint.get(commit) & STALE) == 0) {
+                fresh -= 1;
+            }
+            int flags = paint.get(commit) & (ONE | TWO | STALE);
+            if (flags == (ONE | TWO)) {
+                if ((paint.get(commit) & RESULT) == 0) {
+                    paint.put(commit, paint.get(commit) | RESULT);
+                    candidates.add(commit);
+                }
+                flags |= STALE;
+            }
+            for (String parent : CommitGraph.parents(objectDir, commit)) {
+                int old = paint.getOrDefault(parent, 0);
+                if ((old & flags) == flags) {
+                    continue;
+                }
+                paint.put(parent, old | flags);
+                if ((old & STALE) == 0 && (flags & STALE) != 0) {
+                    fresh -= queued.getOrDefault(parent, 0);
+                }
+                queue.add(parent);
+                queued.merge(parent, 1, Integer::sum);
+                if (((old | flags) & STALE) == 0) {
+                    fresh += 1;
+                }
+            }
+        }
+        return candidates;
+    }
+
+    /** Returns true if TARGET is FROM or an ancestor of it. Commits of a
+     *  lower generation than TARGET cannot lead to it and are not walked. */
+    private boolean reaches(String from, String target) {
+        long floor = key(target)[0] == UNKNOWN ? 0 : key(target)[0];
+        Deque<String> fringe = new ArrayDeque<>();
+        Set<String> visited = new HashSet<>();
+        fringe.push(from);
+        visited.add(from);
+        while (!fringe.isEmpty()) {
+            String commit = fringe.pop();
+            if (commit.equals(target)) {
+                return true;
+            }
+            if (key(commit)[0] <= floor) {
+                continue;
+            }
+            for (String parent : CommitGraph.parents(objectDir, commit)) {
+                if (visited.add(parent)) {
+                    fringe.push(parent);
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Returns the generation and time of COMMIT. */
+    private long[] key(String commit) {
+        long[] key = keys.get(commit);
+        if (key == null) {
+            int row = graph.row(commit);
+            if (row == CommitGraph.NONE) {
+                key = new long[] {UNKNOWN, Commit.fromFile(objectDir, commit).getTime()};
+            } else {
+                key = new long[] {graph.generation(row), graph.time(row)};
+            }
+            keys.put(commit, key);
+        }
+        return key;
+    }
+
+    /** Returns an order of commits by generation, then time, newest first,
+     *  and then by id. */
+    private Comparator<String> newestFirst() {
+        return (a, b) -> {
+            long[] keyA = key(a);
+            long[] keyB = key(b);
+            if (keyA[0] != keyB[0]) {
+                return Long.compare(keyB[0], keyA[0]);
+            }
+            if (keyA[1] != keyB[1]) {
+                return Long.compare(keyB[1], keyA[1]);
+            }
+            return a.compareTo(b);
+        };
+    }
+}
@@ -0,0 +1,327 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static gitlet.Utils.*;
+
+/** Indexes of commit messages, so find reads only the commits it reports.
+ *  The message-index file maps the hash of each whole message, and the
+ *  word-index file the hash of each word of a message in lower case, to
+ *  the commit-graph rows of the commits. Each is a hash table on disk,
+ *  probed and written a slot at a time. As hashes may collide, every
+ *  commit found is read to check its message. The header of each file
+ *  records how many rows of the graph it covers, and update indexes the
+ *  rows since, so the indexes catch up after any command that adds
+ *  commits, however they were added.
+ *
+ *  @author Jeffrey Huang
+ */
+public class MessageIndex {
+
+    /** Returns the message-index file of OBJECTDIR. */
+    private static File messageFile(File objectDir) {
+        return join(objectDir, "message-index");
+    }
+
+    /** Returns the word-index file of OBJECTDIR. */
+    private static File wordFile(File objectDir) {
+        return join(objectDir, "word-index");
+    }
+
+    /** Indexes every commit-graph row of OBJECTDIR not yet indexed. */
+    public static void update(File objectDir) {
+        CommitGraph graph = CommitGraph.open(objectDir);
+        try (Table messages = new Table(messageFile(objectDir));
+             Table words = new Table(wordFile(objectDir))) {
+            int start = Math.min(messages.indexed(), words.indexed());
+            if (start == graph.count() && messageFile(objectDir).isFile()
+                    && wordFile(objectDir).isFile()) {
+                return;
+            }
+            for (int row = start; row < graph.count(); row++) {
+                String message = Commit.fromFile(objectDir, graph.id(row)).getCommitMessage();
+                if (row >= messages.indexed()) {
+                    messages.put(message.hashCode(), row);
+                }
+                if (row >= words.indexed()) {
+                    for (String word : words(message)) {
+                        words.put(word.hashCode(), row);
+                    }
+                }
+            }
+            messages.setIndexed(graph.count());
+            words.setIndexed(graph.count());
+        }
+    }
+
+    /** Deletes the indexes of OBJECTDIR and indexes every commit again. */
+    public static void rebuild(File objectDir) {
+        messageFile(objectDir).delete();
+        wordFile(objectDir).delete();
+        update(objectDir);
+    }
+
+    /** Returns the ids of the commits of OBJECTDIR whose message is MESSAGE,
+     *  in sorted order. */
+    public static List<String> find(File objectDir, String message) {
+        update(objectDir);
+        CommitGraph graph = CommitGraph.open(objectDir);
+        TreeSet<String> result = new TreeSet<>();
+        List<Integer> rows;
+        try (Table messages = new Table(messageFile(objectDir))) {
+            rows = messages.get(message.hashCode());
+        }
+        for (int row : rows) {
+            String sha = graph.id(row);
+            if (Commit.fromFile(objectDir, sha).getCommitMessage().equals(message)) {
+                result.add(sha);
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** Returns the ids of the commits of OBJECTDIR whose message contains
+     *  WORD, ignoring case, in sorted order. */
+    public static List<String> findWord(File objectDir, String word) {
+        update(objectDir);
+        CommitGraph graph = CommitGraph.open(objectDir);
+        TreeSet<String> result = new TreeSet<>();
+        String key = word.toLowerCase();
+        List<Integer> rows;
+        try (Table words = new Table(wordFile(objectDir))) {
+            rows = words.get(key.hashCode());
+        }
+        for (int row : rows) {
+            String sha = graph.id(row);
+            if (words(Commit.fromFile(objectDir, sha).getCommitMessage()).contains(key)) {
+                result.add(sha);
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** Returns the distinct words of MESSAGE in lower case: its runs of
+     *  letters and digits. */
+    private static Set<String> words(String message) {
+        Set<String> result = new HashSet<>();
+        for (String word : message.toLowerCase().split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) {
+                result.add(word);
+            }
+        }
+        return result;
+    }
+
+    /** A hash table on disk from int keys to commit-graph rows, which may
+     *  hold several rows for a key. After a header of magic number,
+     *  version, capacity, entries and rows covered come CAPACITY slots of
+     *  a key and the row plus one, 0 marking an empty slot. A key's rows
+     *  are in the slots from its hash onward up to the first empty one.
+     *  The table doubles when it is seven tenths full. The header is
+     *  written by setIndexed, after the slots, so an interrupted update
+     *  leaves rows that the next one indexes again; find ignores the
+     *  repeats. */
+    private static class Table implements AutoCloseable {
+
+        /** Magic number at the start of the file. */
+        private static final int MAGIC = 0x474d5349;
+
+        /** Version of the format. */
+        private static final int VERSION = 1;
+
+        /** Bytes before the first slot. */
+        private static final int HEADER = 20;
+
+        /** Bytes in a slot. */
+        private static final int SLOT = 8;
+
+        /** Slots in a new table. */
+        private static final int INITIAL_CAPACITY = 1024;
+
+        /** The file of the table. */
+        private final File file;
+
+        /** The open file, or null. */
+        private FileChannel channel;
+
+        /** Number of slots, entries and rows covered; all 0 until the file
+         *  exists. */
+        private int capacity;
+        private int size;
+        private int indexed;
+
+        /** The table in FILE. */
+        Table(File file) {
+            this.file = file;
+            if (!file.isFile()) {
+                return;
+            }
+            ByteBuffer header = read(0, HEADER);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw error("Corrupt index %s.", file);
+            }
+            capacity = header.getInt();
+            size = header.getInt();
+            indexed = header.getInt();
+        }
+
+        /** Returns the number of commit-graph rows covered. */
+        int indexed() {
+            return indexed;
+        }
+
+        /** Records that the first ROWS rows are covered. */
+        void setIndexed(int rows) {
+            if (capacity == 0) {
+                create(INITIAL_CAPACITY, new int[0], new int[0]);
+            }
+            indexed = rows;
+            ByteBuffer header = ByteBuffer.allocate(HEADER);
+            header.putInt(MAGIC).putInt(VERSION).putInt(capacity).putInt(size).putInt(indexed);
+            write(0, header);
+        }
+
+        /** Returns the rows stored under KEY. */
+        List<Integer> get(int key) {
+            List<Integer> result = new ArrayList<>();
+            if (capacity == 0) {
+                return result;
+            }
+            for (int slot = home(key, capacity); ; slot = (slot + 1) % capacity) {
+                ByteBuffer entry = read(HEADER + (long) slot * SLOT, SLOT);
+                int slotKey = entry.getInt();
+                int row = entry.getInt() - 1;
+                if (row < 0) {
+                    return result;
+                }
+                if (slotKey == key) {
+                    result.add(row);
+                }
+            }
+        }
+
+        /** Stores ROW under KEY. */
+        void put(int key, int row) {
+            if (capacity == 0) {
+                create(INITIAL_CAPACITY, new int[0], new int[0]);
+            }
+            if ((size + 1) * 10L > capacity * 7L) {
+                grow();
+            }
+            int slot = home(key, capacity);
+            while (read(HEADER + (long) slot * SLOT + 4, 4).getInt() != 0) {
+                slot = (slot + 1) % capacity;
+            }
+            write(HEADER + (long) slot * SLOT, ByteBuffer.allocate(SLOT).putInt(key)
+                    .putInt(row + 1));
+            size += 1;
+        }
+
+        /** Returns the first of SLOTS slots to probe for KEY. */
+        private static int home(int key, int slots) {
+            int mixed = key * 0x9e3779b9;
+            return Math.floorMod(mixed ^ mixed >>> 16, slots);
+        }
+
+        /** Rewrites the table with twice the slots. */
+        private void grow() {
+            ByteBuffer slots = read(HEADER, capacity * SLOT);
+            int[] keys = new int[capacity];
+            int[] rows = new int[capacity];
+            int n = 0;
+            for (int i = 0; i < capacity; i++) {
+                int key = slots.getInt();
+                int row = slots.getInt() - 1;
+                if (row >= 0) {
+                    keys[n] = key;
+                    rows[n] = row;
+                    n += 1;
+                }
+            }
+            create(capacity * 2, Arrays.copyOf(keys, n), Arrays.copyOf(rows, n));
+        }
+
+        /** Replaces the file with a table of SLOTS slots holding ROWS under
+         *  KEYS. */
+        private void create(int slots, int[] keys, int[] rows) {
+            ByteBuffer table = ByteBuffer.allocate(HEADER + slots * SLOT);
+            table.putInt(MAGIC).putInt(VERSION).putInt(slots).putInt(keys.length)
+                    .putInt(indexed);
+            for (int i = 0; i < keys.length; i++) {
+                int slot = home(keys[i], slots);
+                while (table.getInt(HEADER + slot * SLOT + 4) != 0) {
+                    slot = (slot + 1) % slots;
+                }
+                table.putInt(HEADER + slot * SLOT, keys[i]);
+                table.putInt(HEADER + slot * SLOT + 4, rows[i] + 1);
+            }
+            close();
+            File temp = new File(file.getPath() + ".tmp");
+            writeContents(temp, table.array());
+            ObjectStore.replace(temp, file);
+            capacity = slots;
+            size = keys.length;
+        }
+
+        /** Returns the open file. */
+        private FileChannel channel() throws IOException {
+            if (channel == null) {
+                channel = FileChannel.open(file.toPath(), StandardOpenOption.READ,
+                        StandardOpenOption.WRITE);
+            }
+            return channel;
+        }
+
+        /** Returns LENGTH bytes of the file from POSITION. */
+        private ByteBuffer read(long position, int length) {
+            ByteBuffer result = ByteBuffer.allocate(length);
+            try {
+                while (result.hasRemaining()) {
+                    if (channel().read(result, position + result.position()) < 0) {
+                        throw error("Corrupt index %s.", file);
+                    }
+                }
+            } catch (IOException e) {
+                throw error("Cannot read %s: %s", file, e.getMessage());
+            }
+            result.flip();
+            return result;
+        }
+
+        /** Writes DATA, from its start, to the file at POSITION. */
+        private void write(long position, ByteBuffer data) {
+            data.flip();
+            try {
+                while (data.hasRemaining()) {
+                    channel().write(data, position + data.position());
+                }
+            } catch (IOException e) {
+                throw error("Cannot write %s: %s", file, e.getMessage());
+            }
+        }
+
+        /** Closes the file if it is open. */
+        @Override
+        public void close() {
+            if (channel == null) {
+                return;
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw error("Cannot close %s: %s", file, e.getMessage());
+            }
+            channel = null;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static gitlet.Utils.*;
+
+/** Upgrades repositories written by older versions of Gitlet. The format
+ *  of a repository is kept in its config under core.format:
+ *  1. Each file version was stored twice: its contents, and a serialized
+ *     Blobs wrapper naming them, which commits and the staging area
+ *     referred to.
+ *  2. Commits and the staging area refer to the sha1code of the contents.
+ *  3. Commits and remotes are stored in the encoding of Codec rather than
+ *     by Java serialization.
+ *  4. Branches and HEAD are files under refs (see Refs) instead of one
+ *     serialized Trees file that also held every commit.
+ *
+ *  @author Jeffrey Huang
+ */
+public class Migration {
+
+    /** Format of the repositories this version writes. */
+    public static final int FORMAT = 4;
+
+    /** Returns true if the repository in GITLETDIR is of the current format. */
+    public static boolean isCurrent(File gitletDir) {
+        return Config.getInt(gitletDir, Config.FORMAT, 1) == FORMAT;
+    }
+
+    /** Rewrites this repository into the current format. Every commit is
+     *  written again in the current encoding, with any wrappers replaced by
+     *  the contents they name, which gives it a new sha1code, so branches,
+     *  the head and the staging area are moved over too; branches still in
+     *  the Trees file move into refs. The old commits and the wrappers are
+     *  then deleted, loose or packed. Ids that are not wrappers are taken to be
+     *  contents already, so an interrupted migration can be run again. */
+    public static void migrate() {
+        if (isCurrent(Repository.GITLET_DIR)) {
+            System.out.println("Repository is already up to date.");
+            return;
+        }
+        File objectDir = Repository.OBJECT_DIR;
+        HashMap<String, String> contents = new HashMap<>();
+        HashMap<String, Commit> rewritten = new HashMap<>();
+        for (String commitID : ObjectStore.list(objectDir, ObjectStore.COMMIT)) {
+            rewrite(objectDir, commitID, contents, rewritten);
+        }
+
+        File treeFile = join(objectDir, "tree");
+        Map<String, String> branches;
+        String headName;
+        if (treeFile.isFile()) {
+            Trees tree = Trees.fromFile();
+            branches = tree.getBranchHolder();
+            headName = tree.getHeadName();
+        } else {
+            branches = Refs.branches(Repository.GITLET_DIR);
+            headName = Refs.headName(Repository.GITLET_DIR);
+        }
+        for (Map.Entry<String, String> branch : branches.entrySet()) {
+            Refs.setBranch(Repository.GITLET_DIR, branch.getKey(),
+                    newID(branch.getValue(), rewritten));
+        }
+        Refs.setHeadName(Repository.GITLET_DIR, headName);
+        treeFile.delete();
+
+        StagingArea sa = StagingArea.fromFile();
+        for (Map.Entry<String, String> entry : sa.getAdditionMap().entrySet()) {
+            entry.setValue(contentsOf(objectDir, entry.getValue(), contents));
+        }
+        for (Map.Entry<String, String> entry : sa.getDeletionMap().entrySet()) {
+            entry.setValue(contentsOf(objectDir, entry.getValue(), contents));
+        }
+        sa.saveStagingArea();
+        Remote.fromFile().saveRemote();
+        Config.set(Config.FORMAT, Integer.toString(FORMAT));
+
+        Set<String> obsolete = new HashSet<>(ObjectStore.list(objectDir, ObjectStore.BLOB));
+        for (Map.Entry<String, Commit> entry : rewritten.entrySet()) {
+            if (!entry.getKey().equals(entry.getValue().getCommitSHA1code())) {
+                obsolete.add(entry.getKey());
+            }
+        }
+        if (Pack.all(objectDir).isEmpty()) {
+            for (String sha : obsolete) {
+                join(ObjectStore.looseDir(objectDir, ObjectStore.COMMIT), sha).delete();
+                join(ObjectStore.looseDir(objectDir, ObjectStore.BLOB), sha).delete();
+            }
+        } else {
+            Pack.repack(objectDir, true, obsolete);
+        }
+    }
+
+    /** Writes the commit COMMITID of OBJECTDIR again in the current format,
+     *  after its parents, and records the new commit in REWRITTEN under the
+     *  old id. CONTENTS caches the contents each wrapper names. */
+    private static void rewrite(File objectDir, String commitID,
+                                HashMap<String, String> contents,
+                                HashMap<String, Commit> rewritten) {
+        Deque<String> pending = new ArrayDeque<>();
+        pending.push(commitID);
+        while (!pending.isEmpty()) {
+            String id = pending.peek();
+            if (rewritten.containsKey(id)) {
+                pending.pop();
+                continue;
+            }
+            Commit old = Commit.fromFile(objectDir, id);
+            String parent = old.getParent();
+            String parent2 = old.getParent2();
+            if (parent != null && !rewritten.containsKey(parent)) {
+                pending.push(parent);
+                continue;
+            }
+            if (parent2 != null && !rewritten.containsKey(parent2)) {
+                pending.push(parent2);
+                continue;
+            }
+            Commit commit = new Commit(old.getCommitMessage(), old.getTimestamp(),
+                    newID(parent, rewritten), newID(parent2, rewritten));
+            for (Map.Entry<String, String> entry : old.getCommitMap().entrySet()) {
+                commit.getCommitMap().put(entry.getKey(),
+                        contentsOf(objectDir, entry.getValue(), contents));
+            }
+            commit.saveCommmit();
+            rewritten.put(id, commit);
+            pending.pop();
+        }
+    }
+
+    /** Returns the new id of the commit COMMITID, which is null or unknown
+     *  to REWRITTEN if it was not rewritten. */
+    private static String newID(String commitID, HashMap<String, Commit> rewritten) {
+        Commit commit = rewritten.get(commitID);
+        return commit == null ? commitID : commit.getCommitSHA1code();
+    }
+
+    /** Returns the sha1code of the contents the wrapper SHA of OBJECTDIR
+     *  names, or SHA itself if it is not a wrapper. CONTENTS caches the
+     *  answers. */
+    private static String contentsOf(File objectDir, String sha,
+                                     HashMap<String, String> contents) {
+        String result = contents.get(sha);
+        if (result == null) {
+            if (sha.isEmpty() || !isWrapper(objectDir, sha)) {
+                return sha;
+            }
+            result = Blobs.fromFile(objectDir, sha).getFileSHA1code();
+            contents.put(sha, result);
+        }
+        return result;
+    }
+
+    /** Returns true if SHA is a wrapper of OBJECTDIR, loose or packed. */
+    private static boolean isWrapper(File objectDir, String sha) {
+        return join(ObjectStore.looseDir(objectDir, ObjectStore.BLOB), sha).isFile()
+                || Pack.type(objectDir, sha) == ObjectStore.BLOB;
+    }
+}
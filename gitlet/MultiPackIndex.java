@@ -0,0 +1,252 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+import static gitlet.Utils.*;
+
+/** One index over every pack of a repository. After a header and the
+ *  names of the packs it covers, the file holds a 256-entry fanout table
+ *  (the number of ids whose first byte is at most i), the sorted 20-byte
+ *  ids, and for each id its pack number, offset and type. The file is
+ *  memory-mapped, so a lookup is a fanout read and a binary search over
+ *  the mapping with no allocation, however many packs there are.
+ *
+ *  @author Jeffrey Huang
+ */
+public class MultiPackIndex {
+
+    /** Magic number at the start of the file. */
+    private static final int MAGIC = 0x474d4958;
+
+    /** Version of the format. */
+    private static final int VERSION = 1;
+
+    /** Bytes in a raw object id. */
+    private static final int ID_BYTES = UID_LENGTH / 2;
+
+    /** Indexes already mapped, keyed by the path of their .objects directory. */
+    private static final HashMap<String, MultiPackIndex> OPENED = new HashMap<>();
+
+    /** The mapped file. */
+    private final MappedByteBuffer map;
+
+    /** Names of the packs covered, indexed by pack number. */
+    private final String[] packNames;
+
+    /** The same names, for membership tests. */
+    private final HashSet<String> covered;
+
+    /** Number of ids in the index. */
+    private final int count;
+
+    /** Positions in the map of the fanout, ids, pack numbers, offsets and types. */
+    private final int fanoutStart;
+    private final int idStart;
+    private final int packStart;
+    private final int offsetStart;
+    private final int typeStart;
+
+    /** An index read from MAP. */
+    private MultiPackIndex(MappedByteBuffer map) {
+        this.map = map;
+        if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION) {
+            throw error("Corrupt multi-pack index.");
+        }
+        packNames = new String[map.getInt(8)];
+        count = map.getInt(12);
+        int pos = 16;
+        for (int i = 0; i < packNames.length; i++) {
+            int length = map.getShort(pos) & 0xffff;
+            byte[] name = new byte[length];
+            map.get(pos + 2, name);
+            packNames[i] = new String(name);
+            pos += 2 + length;
+        }
+        covered = new HashSet<>(Arrays.asList(packNames));
+        fanoutStart = pos;
+        idStart = fanoutStart + 256 * 4;
+        packStart = idStart + count * ID_BYTES;
+        offsetStart = packStart + count * 4;
+        typeStart = offsetStart + count * 8;
+    }
+
+    /** Returns the index file of OBJECTDIR. */
+    public static File indexFile(File objectDir) {
+        return join(Pack.packDir(objectDir), "multi-pack-index");
+    }
+
+    /** Returns the mapped index of OBJECTDIR, or null if it has none. */
+    public static synchronized MultiPackIndex open(File objectDir) {
+        String key = objectDir.getAbsolutePath();
+        if (OPENED.containsKey(key)) {
+            return OPENED.get(key);
+        }
+        MultiPackIndex midx = null;
+        File file = indexFile(objectDir);
+        if (file.isFile()) {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                midx = new MultiPackIndex(channel.map(FileChannel.MapMode.READ_ONLY,
+                        0, channel.size()));
+            } catch (IOException e) {
+                throw error("Cannot map %s: %s", file, e.getMessage());
+            }
+        }
+        OPENED.put(key, midx);
+        return midx;
+    }
+
+    /** Returns true if this index covers the pack named NAME. */
+    public boolean covers(String name) {
+        return covered.contains(name);
+    }
+
+    /** Returns the position of SHA in the index, or -1 if it is absent. */
+    public int position(String sha) {
+        int first = (Character.digit(sha.charAt(0), 16) << 4)
+                | Character.digit(sha.charAt(1), 16);
+        int lo = first == 0 ? 0 : map.getInt(fanoutStart + (first - 1) * 4);
+        int hi = map.getInt(fanoutStart + first * 4) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compare(idStart + mid * ID_BYTES, sha);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /** Returns the name of the pack holding the object at POS. */
+    public String packName(int pos) {
+        return packNames[map.getInt(packStart + pos * 4)];
+    }
+
+    /** Returns the offset in its pack of the object at POS. */
+    public long offset(int pos) {
+        return map.getLong(offsetStart + pos * 8);
+    }
+
+    /** Returns the type of the object at POS. */
+    public int type(int pos) {
+        return map.get(typeStart + pos);
+    }
+
+    /** Compares the id at POS in the map with the hex id SHA, digit by digit. */
+    private int compare(int pos, String sha) {
+        for (int i = 0; i < ID_BYTES; i++) {
+            int b = map.get(pos + i) & 0xff;
+            int cmp = (b >>> 4) - Character.digit(sha.charAt(2 * i), 16);
+            if (cmp == 0) {
+                cmp = (b & 0xf) - Character.digit(sha.charAt(2 * i + 1), 16);
+            }
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    /** Writes a new index over every pack of OBJECTDIR. An object held by
+     *  several packs is indexed once. */
+    public static void write(File objectDir) {
+        List<Pack> packs = Pack.all(objectDir);
+        int total = 0;
+        for (Pack pack : packs) {
+            total += pack.count();
+        }
+        byte[] ids = new byte[total * ID_BYTES];
+        int[] packNumbers = new int[total];
+        long[] offsets = new long[total];
+        byte[] types = new byte[total];
+        int n = 0;
+        for (int p = 0; p < packs.size(); p++) {
+            Pack pack = packs.get(p);
+            for (int i = 0; i < pack.count(); i++) {
+                pack.copyId(i, ids, n * ID_BYTES);
+                packNumbers[n] = p;
+                offsets[n] = pack.offset(i);
+                types[n] = (byte) pack.type(i);
+                n += 1;
+            }
+        }
+        Integer[] order = new Integer[total];
+        for (int i = 0; i < total; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> compareIds(ids, a, b));
+        List<Integer> unique = new ArrayList<>();
+        for (int i = 0; i < total; i++) {
+            if (i == 0 || compareIds(ids, order[i - 1], order[i]) != 0) {
+                unique.add(order[i]);
+            }
+        }
+        int[] fanout = new int[256];
+        for (int i : unique) {
+            fanout[ids[i * ID_BYTES] & 0xff] += 1;
+        }
+        for (int i = 1; i < 256; i++) {
+            fanout[i] += fanout[i - 1];
+        }
+        File file = indexFile(objectDir);
+        File temp = join(Pack.packDir(objectDir), "multi-pack-index.tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(packs.size());
+            out.writeInt(unique.size());
+            for (Pack pack : packs) {
+                byte[] name = pack.name().getBytes();
+                out.writeShort(name.length);
+                out.write(name);
+            }
+            for (int count : fanout) {
+                out.writeInt(count);
+            }
+            for (int i : unique) {
+                out.write(ids, i * ID_BYTES, ID_BYTES);
+            }
+            for (int i : unique) {
+                out.writeInt(packNumbers[i]);
+            }
+            for (int i : unique) {
+                out.writeLong(offsets[i]);
+            }
+            for (int i : unique) {
+                out.writeByte(types[i]);
+            }
+        } catch (IOException e) {
+            throw error("Cannot write %s: %s", file, e.getMessage());
+        }
+        ObjectStore.replace(temp, file);
+        OPENED.remove(objectDir.getAbsolutePath());
+    }
+
+    /** Compares the Ath and Bth ids of IDS. */
+    static int compareIds(byte[] ids, int a, int b) {
+        for (int i = 0; i < ID_BYTES; i++) {
+            int cmp = (ids[a * ID_BYTES + i] & 0xff) - (ids[b * ID_BYTES + i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+}
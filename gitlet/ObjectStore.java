@@ -0,0 +1,579 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import static gitlet.Utils.*;
+
+/** Reads and writes the objects of a repository. An object is either loose,
+ *  one file per object under .commits, .trees, .blobs or .fileContents, or
+ *  sits inside a pack under .packs. Every method takes the .objects
+ *  directory so the same code serves both this repository and its remotes.
+ *  Loose objects are written as a magic number followed by a deflated
+ *  header ("TYPE SIZE" and a NUL) and the deflated contents. Files without
+ *  the magic number are read as they are, so older repositories still work.
+ *
+ *  @author Jeffrey Huang
+ */
+public class ObjectStore {
+
+    /** Type of a serialized Commit. */
+    public static final int COMMIT = 1;
+
+    /** Type of a serialized Blobs, found only in format 1 repositories. */
+    public static final int BLOB = 2;
+
+    /** Type of the raw contents of a file. */
+    public static final int CONTENTS = 3;
+
+    /** Type of the list of chunks a large file was split into. It has the
+     *  id of the whole file and is read wherever CONTENTS are. Pack entries
+     *  use type 4 for deltas, hence the gap. */
+    public static final int CHUNKS = 5;
+
+    /** Type of an encoded Tree, one directory of a commit. */
+    public static final int TREE = 6;
+
+    /** Every type, in the order repack writes them. */
+    public static final int[] TYPES = {COMMIT, TREE, BLOB, CONTENTS, CHUNKS};
+
+    /** Names of the loose directories, indexed by type. */
+    private static final String[] LOOSE_DIRS =
+        {null, ".commits", ".blobs", ".fileContents", null, ".chunkLists", ".trees"};
+
+    /** Names of the types in loose object headers, indexed by type. */
+    private static final String[] TYPE_NAMES =
+        {null, "commit", "blob", "contents", null, "chunks", "tree"};
+
+    /** First bytes of a compressed loose object. */
+    private static final byte[] LOOSE_MAGIC = {0, 'g', 'l', 'z'};
+
+    /** Size of the buffers used to stream objects. */
+    static final int BUFFER_SIZE = 8192;
+
+    /** Returns the loose directory of TYPE inside OBJECTDIR. */
+    public static File looseDir(File objectDir, int type) {
+        return join(objectDir, LOOSE_DIRS[type]);
+    }
+
+    /** Returns the contents of object SHA of TYPE, or null if OBJECTDIR has
+     *  no such object. */
+    public static byte[] read(File objectDir, int type, String sha) {
+        if (type == CONTENTS && isChunked(objectDir, sha)) {
+            try (InputStream in = openChunks(objectDir, sha)) {
+                return in.readAllBytes();
+            } catch (IOException e) {
+                throw error("Cannot read %s: %s", sha, e.getMessage());
+            }
+        }
+        File loose = join(looseDir(objectDir, type), sha);
+        if (loose.isFile()) {
+            try (InputStream in = openLoose(loose)) {
+                return in.readAllBytes();
+            } catch (IOException e) {
+                throw error("Cannot read %s: %s", loose, e.getMessage());
+            }
+        }
+        return Pack.find(objectDir, sha);
+    }
+
+    /** Returns a stream of the contents of object SHA of TYPE. A loose object
+     *  is inflated as it is read rather than read into memory first. */
+    public static InputStream open(File objectDir, int type, String sha) {
+        if (type == CONTENTS && isChunked(objectDir, sha)) {
+            return openChunks(objectDir, sha);
+        }
+        File loose = join(looseDir(objectDir, type), sha);
+        if (loose.isFile()) {
+            return openLoose(loose);
+        }
+        byte[] packed = Pack.find(objectDir, sha);
+        if (packed == null) {
+            throw error("No object %s in %s.", sha, objectDir);
+        }
+        return new ByteArrayInputStream(packed);
+    }
+
+    /** Returns true if the contents SHA of OBJECTDIR are stored as a chunk list. */
+    public static boolean isChunked(File objectDir, String sha) {
+        if (join(looseDir(objectDir, CHUNKS), sha).isFile()) {
+            return true;
+        }
+        return !join(looseDir(objectDir, CONTENTS), sha).isFile()
+                && Pack.type(objectDir, sha) == CHUNKS;
+    }
+
+    /** Returns the ids of the chunks of the contents SHA, in order. */
+    public static List<String> chunks(File objectDir, String sha) {
+        byte[] list = read(objectDir, CHUNKS, sha);
+        if (list == null) {
+            throw error("No object %s in %s.", sha, objectDir);
+        }
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < list.length; i += UID_LENGTH / 2) {
+            result.add(toHex(list, i));
+        }
+        return result;
+    }
+
+    /** Writes CHUNKIDS as the chunk list of the contents SHA. */
+    public static void writeChunks(File objectDir, String sha, List<String> chunkIds) {
+        byte[] list = new byte[chunkIds.size() * UID_LENGTH / 2];
+        for (int i = 0; i < chunkIds.size(); i++) {
+            System.arraycopy(toBytes(chunkIds.get(i)), 0, list, i * UID_LENGTH / 2,
+                    UID_LENGTH / 2);
+        }
+        write(objectDir, CHUNKS, sha, list);
+    }
+
+    /** Returns a stream of the chunks of the contents SHA, one after another.
+     *  Each chunk is opened only when the previous one is used up. */
+    private static InputStream openChunks(File objectDir, String sha) {
+        Iterator<String> chunkIds = chunks(objectDir, sha).iterator();
+        return new SequenceInputStream(new Enumeration<InputStream>() {
+            @Override
+            public boolean hasMoreElements() {
+                return chunkIds.hasNext();
+            }
+
+            @Override
+            public InputStream nextElement() {
+                return open(objectDir, CONTENTS, chunkIds.next());
+            }
+        });
+    }
+
+    /** Returns a stream of the contents of the loose object in FILE, after
+     *  its header if it is compressed. */
+    private static InputStream openLoose(File file) {
+        try {
+            InputStream in = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+            in.mark(LOOSE_MAGIC.length);
+            byte[] magic = in.readNBytes(LOOSE_MAGIC.length);
+            if (!Arrays.equals(magic, LOOSE_MAGIC)) {
+                in.reset();
+                return in;
+            }
+            InputStream inflated = new InflaterInputStream(in);
+            if (readHeader(inflated) == null) {
+                inflated.close();
+                throw error("Corrupt object %s.", file);
+            }
+            return inflated;
+        } catch (IOException e) {
+            throw error("Cannot read %s: %s", file, e.getMessage());
+        }
+    }
+
+    /** Reads the "TYPE SIZE" header of a loose object from IN and returns it,
+     *  or null if IN ends first. */
+    private static String readHeader(InputStream in) throws IOException {
+        StringBuilder header = new StringBuilder();
+        int c = in.read();
+        while (c > 0) {
+            header.append((char) c);
+            c = in.read();
+        }
+        return c < 0 ? null : header.toString();
+    }
+
+    /** Returns the size in bytes of object SHA of TYPE, or -1 if OBJECTDIR has
+     *  no such object. Only the header of a loose or packed object is read. */
+    public static long size(File objectDir, int type, String sha) {
+        File loose = join(looseDir(objectDir, type), sha);
+        if (!loose.isFile()) {
+            return Pack.size(objectDir, sha);
+        }
+        try (InputStream in = new BufferedInputStream(new FileInputStream(loose))) {
+            if (!Arrays.equals(in.readNBytes(LOOSE_MAGIC.length), LOOSE_MAGIC)) {
+                return loose.length();
+            }
+            String header = readHeader(new InflaterInputStream(in));
+            if (header == null) {
+                throw error("Corrupt object %s.", loose);
+            }
+            return Long.parseLong(header.substring(header.indexOf(' ') + 1));
+        } catch (IOException | NumberFormatException e) {
+            throw error("Cannot read %s: %s", loose, e.getMessage());
+        }
+    }
+
+    /** Returns the object SHA of TYPE as an instance of EXPECTEDCLASS. */
+    public static <T extends Serializable> T readObject(File objectDir, int type,
+                                                        String sha, Class<T> expectedClass) {
+        try (ObjectInputStream in = new ObjectInputStream(open(objectDir, type, sha))) {
+            return expectedClass.cast(in.readObject());
+        } catch (IOException | ClassCastException | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns true if OBJECTDIR holds object SHA of TYPE. */
+    public static boolean contains(File objectDir, int type, String sha) {
+        return join(looseDir(objectDir, type), sha).isFile()
+                || type == CONTENTS && join(looseDir(objectDir, CHUNKS), sha).isFile()
+                || Pack.contains(objectDir, sha);
+    }
+
+    /** Moves the finished file TEMP over FILE in one step, so a reader sees
+     *  either the old file or the new one, as Refs does for refs. */
+    public static void replace(File temp, File file) {
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            temp.delete();
+            throw error("Cannot replace %s: %s", file, e.getMessage());
+        }
+    }
+
+    /** Writes CONTENTS as loose object SHA of TYPE unless it already exists. */
+    public static void write(File objectDir, int type, String sha, byte[] contents) {
+        if (contains(objectDir, type, sha)) {
+            return;
+        }
+        File dir = looseDir(objectDir, type);
+        if (!dir.exists()) {
+            dir.mkdir();
+        }
+        File temp = join(dir, sha + ".tmp");
+        if (storesRaw(type, contents)) {
+            writeContents(temp, contents);
+        } else {
+            try (OutputStream out = startLoose(temp, type, contents.length)) {
+                out.write(contents);
+            } catch (IOException e) {
+                throw error("Cannot write %s: %s", temp, e.getMessage());
+            }
+        }
+        if (!temp.renameTo(join(dir, sha))) {
+            throw error("Cannot write object %s.", sha);
+        }
+    }
+
+    /** Streams SIZE bytes from IN into a new loose object of TYPE in OBJECTDIR
+     *  and returns its id. The bytes are hashed and deflated in the same
+     *  pass through two small direct buffers, so memory use does not grow
+     *  with SIZE. The object is written under a temporary name and renamed
+     *  into place only if OBJECTDIR does not already hold it. */
+    public static String writeFrom(File objectDir, int type, FileChannel in,
+                                   long size) throws IOException {
+        File dir = looseDir(objectDir, type);
+        if (!dir.exists()) {
+            dir.mkdir();
+        }
+        File temp = File.createTempFile("incoming", ".tmp", dir);
+        MessageDigest digest = newDigest();
+        Deflater deflater = new Deflater(compressionLevel());
+        ByteBuffer input = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        ByteBuffer output = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        byte[] head = new byte[LOOSE_MAGIC.length];
+        in.read(ByteBuffer.wrap(head), in.position());
+        boolean raw = storesRaw(type, head);
+        try (FileChannel out = FileChannel.open(temp.toPath(), StandardOpenOption.WRITE)) {
+            if (!raw) {
+                out.write(ByteBuffer.wrap(LOOSE_MAGIC));
+                deflater.setInput((TYPE_NAMES[type] + " " + size + "\0")
+                        .getBytes(StandardCharsets.UTF_8));
+                drain(deflater, output, out, false);
+            }
+            long remaining = size;
+            while (remaining > 0) {
+                input.clear();
+                if (remaining < input.capacity()) {
+                    input.limit((int) remaining);
+                }
+                if (in.read(input) < 0) {
+                    throw new IOException("file shrank while it was read");
+                }
+                input.flip();
+                remaining -= input.remaining();
+                digest.update(input);
+                input.flip();
+                if (raw) {
+                    while (input.hasRemaining()) {
+                        out.write(input);
+                    }
+                } else {
+                    deflater.setInput(input);
+                    drain(deflater, output, out, false);
+                }
+            }
+            if (!raw) {
+                deflater.finish();
+                drain(deflater, output, out, true);
+            }
+        } catch (IOException e) {
+            temp.delete();
+            throw e;
+        } finally {
+            deflater.end();
+        }
+        String sha = toHex(digest.digest(), 0);
+        if (contains(objectDir, type, sha) || !temp.renameTo(join(dir, sha))) {
+            temp.delete();
+        }
+        return sha;
+    }
+
+    /** Runs DEFLATER until it needs more input, or until it is done if
+     *  FINISHING, writing what it produces to OUT through OUTPUT. */
+    private static void drain(Deflater deflater, ByteBuffer output, WritableByteChannel out,
+                              boolean finishing) throws IOException {
+        while (finishing ? !deflater.finished() : !deflater.needsInput()) {
+            output.clear();
+            deflater.deflate(output);
+            output.flip();
+            while (output.hasRemaining()) {
+                out.write(output);
+            }
+        }
+    }
+
+    /** Returns true if an object of TYPE whose contents begin with HEAD is
+     *  written raw: file contents are when the compression level is 0, unless
+     *  they begin with the magic number and would be mistaken for a
+     *  compressed object. */
+    private static boolean storesRaw(int type, byte[] head) {
+        return type == CONTENTS && compressionLevel() == 0
+                && !(head.length >= LOOSE_MAGIC.length
+                && Arrays.equals(head, 0, LOOSE_MAGIC.length, LOOSE_MAGIC, 0,
+                LOOSE_MAGIC.length));
+    }
+
+    /** Returns true if the loose object FILE is stored raw. */
+    private static boolean isRaw(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return !Arrays.equals(in.readNBytes(LOOSE_MAGIC.length), LOOSE_MAGIC);
+        }
+    }
+
+    /** Writes the contents SHA of OBJECTDIR to TARGET, replacing TARGET
+     *  rather than writing through it. Contents stored raw are copied by
+     *  FileChannel.transferTo, or hard-linked if checkout.hardlinks is true,
+     *  in which case the shared file is made read-only; others are inflated
+     *  straight into the file. Either way the bytes are never decoded, and
+     *  no more than a buffer of them is on the heap. */
+    public static void checkout(File objectDir, String sha, File target) {
+        try {
+            Files.deleteIfExists(target.toPath());
+            File loose = join(looseDir(objectDir, CONTENTS), sha);
+            if (loose.isFile() && isRaw(loose)
+                    && Config.getBoolean(Config.CHECKOUT_HARDLINKS, false)) {
+                try {
+                    loose.setWritable(false, false);
+                    Files.createLink(target.toPath(), loose.toPath());
+                    return;
+                } catch (IOException | UnsupportedOperationException e) {
+                    /* Another file system, or no links: copy instead. */
+                }
+            }
+            try (FileChannel out = FileChannel.open(target.toPath(),
+                    StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW)) {
+                appendContents(objectDir, sha, out);
+            }
+        } catch (IOException e) {
+            throw error("Cannot write %s: %s", target, e.getMessage());
+        }
+    }
+
+    /** Appends the contents SHA of OBJECTDIR to OUT, chunk by chunk if they
+     *  are chunked. */
+    private static void appendContents(File objectDir, String sha, FileChannel out)
+            throws IOException {
+        if (isChunked(objectDir, sha)) {
+            for (String chunk : chunks(objectDir, sha)) {
+                appendContents(objectDir, chunk, out);
+            }
+            return;
+        }
+        File loose = join(looseDir(objectDir, CONTENTS), sha);
+        if (loose.isFile() && isRaw(loose)) {
+            try (FileChannel in = FileChannel.open(loose.toPath(), StandardOpenOption.READ)) {
+                long size = in.size();
+                long done = 0;
+                while (done < size) {
+                    done += in.transferTo(done, size - done, out);
+                }
+            }
+            return;
+        }
+        try (ReadableByteChannel in = Channels.newChannel(open(objectDir, CONTENTS, sha))) {
+            long n;
+            while ((n = out.transferFrom(in, out.position(), Long.MAX_VALUE)) > 0) {
+                out.position(out.position() + n);
+            }
+        }
+    }
+
+    /** Returns a new SHA-1 digest. */
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+    }
+
+    /** Creates the loose object FILE of TYPE and SIZE bytes, writes its magic
+     *  number and header, and returns the stream its contents go to. */
+    static OutputStream startLoose(File file, int type, long size) throws IOException {
+        OutputStream raw = new FileOutputStream(file);
+        raw.write(LOOSE_MAGIC);
+        Deflater deflater = new Deflater(compressionLevel());
+        OutputStream out = new BufferedOutputStream(
+                new DeflaterOutputStream(raw, deflater, BUFFER_SIZE) {
+                    @Override
+                    public void close() throws IOException {
+                        super.close();
+                        deflater.end();
+                    }
+                }, BUFFER_SIZE);
+        out.write((TYPE_NAMES[type] + " " + size + "\0").getBytes(StandardCharsets.UTF_8));
+        return out;
+    }
+
+    /** Returns the configured deflate level. */
+    static int compressionLevel() {
+        int level = Config.getInt(Config.COMPRESSION, Deflater.DEFAULT_COMPRESSION);
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw error("%s must be between -1 and 9.", Config.COMPRESSION);
+        }
+        return level;
+    }
+
+    /** Copies object SHA of TYPE from FROMDIR to TODIR. Chunked contents are
+     *  copied as their chunk list plus whichever chunks TODIR lacks. */
+    public static void copy(File fromDir, File toDir, int type, String sha) {
+        if (contains(toDir, type, sha)) {
+            return;
+        }
+        if (type == CONTENTS && isChunked(fromDir, sha)) {
+            for (String chunk : chunks(fromDir, sha)) {
+                copy(fromDir, toDir, CONTENTS, chunk);
+            }
+            copy(fromDir, toDir, CHUNKS, sha);
+            return;
+        }
+        File loose = join(looseDir(fromDir, type), sha);
+        File dir = looseDir(toDir, type);
+        if (loose.isFile() && dir.isDirectory()) {
+            try {
+                Files.copy(loose.toPath(), join(dir, sha).toPath());
+            } catch (IOException e) {
+                throw error("Cannot copy %s: %s", loose, e.getMessage());
+            }
+            return;
+        }
+        byte[] contents = read(fromDir, type, sha);
+        if (contents == null) {
+            throw error("No object %s in %s.", sha, fromDir);
+        }
+        write(toDir, type, sha, contents);
+    }
+
+    /** Returns the ids of all objects of TYPE, loose or packed, in sorted order. */
+    public static List<String> list(File objectDir, int type) {
+        TreeSet<String> ids = new TreeSet<>();
+        List<String> loose = plainFilenamesIn(looseDir(objectDir, type));
+        if (loose != null) {
+            ids.addAll(loose);
+        }
+        for (Pack pack : Pack.all(objectDir)) {
+            ids.addAll(pack.ids(type));
+        }
+        return new ArrayList<>(ids);
+    }
+    /** Calls ACTION with the id of each object of TYPE in OBJECTDIR, once
+     *  each, without listing them all first: the loose objects in the order
+     *  of their directory, then the packed ones pack by pack. */
+    public static void forEach(File objectDir, int type, Consumer<String> action) {
+        File dir = looseDir(objectDir, type);
+        if (dir.isDirectory()) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir.toPath())) {
+                for (Path path : stream) {
+                    String name = path.getFileName().toString();
+                    if (name.length() == UID_LENGTH) {
+                        action.accept(name);
+                    }
+                }
+            } catch (IOException e) {
+                throw error("Cannot list %s: %s", dir, e.getMessage());
+            }
+        }
+        List<Pack> packs = Pack.all(objectDir);
+        byte[] id = new byte[UID_LENGTH / 2];
+        for (int p = 0; p < packs.size(); p++) {
+            Pack pack = packs.get(p);
+            for (int i = 0; i < pack.count(); i++) {
+                if (pack.type(i) != type) {
+                    continue;
+                }
+                pack.copyId(i, id, 0);
+                String sha = toHex(id, 0);
+                boolean seen = join(dir, sha).isFile();
+                for (int q = 0; q < p && !seen; q++) {
+                    seen = packs.get(q).position(id) >= 0;
+                }
+                if (!seen) {
+                    action.accept(sha);
+                }
+            }
+        }
+    }
+
+
+    /** Returns the 20 raw bytes of the hex id SHA. */
+    public static byte[] toBytes(String sha) {
+        byte[] result = new byte[UID_LENGTH / 2];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = (byte) ((Character.digit(sha.charAt(2 * i), 16) << 4)
+                    | Character.digit(sha.charAt(2 * i + 1), 16));
+        }
+        return result;
+    }
+
+    /** Returns the hex id held in the 20 bytes of BYTES starting at OFFSET. */
+    public static String toHex(byte[] bytes, int offset) {
+        char[] result = new char[UID_LENGTH];
+        for (int i = 0; i < UID_LENGTH / 2; i++) {
+            int b = bytes[offset + i] & 0xff;
+            result[2 * i] = Character.forDigit(b >>> 4, 16);
+            result[2 * i + 1] = Character.forDigit(b & 0xf, 16);
+        }
+        return new String(result);
+    }
+}
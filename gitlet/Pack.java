@@ -0,0 +1,684 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static gitlet.Utils.*;
+
+/** An append-only pack of objects together with its index. The pack file
+ *  holds the objects back to back, each as a type byte, the length of its
+ *  deflated contents, the size of the object and the deflated contents.
+ *  File contents may instead be stored as a delta: the id of a base object
+ *  in the same pack followed by a Delta against it. The index holds the ids
+ *  sorted, followed by the offset and type of each object, so a lookup is
+ *  a binary search and one positional read.
+ *
+ *  @author Jeffrey Huang
+ */
+public class Pack {
+
+    /** Magic number at the start of a pack file. */
+    private static final int PACK_MAGIC = 0x4750414b;
+
+    /** Magic number at the start of an index file. */
+    private static final int INDEX_MAGIC = 0x47494458;
+
+    /** Version of the pack format. */
+    private static final int VERSION = 3;
+
+    /** Version of the index format. */
+    private static final int INDEX_VERSION = 1;
+
+    /** Bytes in a raw object id. */
+    private static final int ID_BYTES = UID_LENGTH / 2;
+
+    /** Type of a pack entry holding a delta against another entry. */
+    private static final int DELTA = 4;
+
+    /** Bytes before the contents of an entry: type, length and size. */
+    private static final int ENTRY_HEADER = 9;
+
+    /** Bytes before the ids of an index: magic, version and count. */
+    private static final int INDEX_HEADER = 12;
+
+    /** Packs already listed, keyed by the path of their .objects directory. */
+    private static final HashMap<String, List<Pack>> OPENED = new HashMap<>();
+
+    /** Packs already opened, keyed by the path of their pack file. */
+    private static final HashMap<String, Pack> NAMED = new HashMap<>();
+
+    /** The pack file. */
+    private final File packFile;
+
+    /** The index file next to the pack file. */
+    private final File indexFile;
+
+    /** Contents of the index, read on first lookup. */
+    private byte[] index;
+
+    /** Number of objects in the pack. */
+    private int count;
+
+    /** Handle on the pack file, opened on first read. Reads give their
+     *  position, so threads may share it. */
+    private FileChannel data;
+
+    /** A pack whose objects are in PACKFILE. */
+    private Pack(File packFile) {
+        this.packFile = packFile;
+        String name = packFile.getName();
+        this.indexFile = new File(packFile.getParentFile(),
+                name.substring(0, name.length() - ".pack".length()) + ".idx");
+    }
+
+    /** Returns the directory holding the packs of OBJECTDIR. */
+    public static File packDir(File objectDir) {
+        return join(objectDir, ".packs");
+    }
+
+    /** Returns the pack of OBJECTDIR called NAME. */
+    public static synchronized Pack named(File objectDir, String name) {
+        File packFile = join(packDir(objectDir), name + ".pack");
+        Pack pack = NAMED.get(packFile.getAbsolutePath());
+        if (pack == null) {
+            pack = new Pack(packFile);
+            NAMED.put(packFile.getAbsolutePath(), pack);
+        }
+        return pack;
+    }
+
+    /** Returns the name of this pack, without its extension. */
+    public String name() {
+        String name = packFile.getName();
+        return name.substring(0, name.length() - ".pack".length());
+    }
+
+    /** Returns every pack of OBJECTDIR that has an index. */
+    public static synchronized List<Pack> all(File objectDir) {
+        String key = objectDir.getAbsolutePath();
+        List<Pack> packs = OPENED.get(key);
+        if (packs != null) {
+            return packs;
+        }
+        packs = new ArrayList<>();
+        List<String> names = plainFilenamesIn(packDir(objectDir));
+        if (names != null) {
+            for (String name : names) {
+                if (name.endsWith(".pack")) {
+                    Pack pack = named(objectDir, name.substring(0, name.length() - 5));
+                    if (pack.indexFile.isFile()) {
+                        packs.add(pack);
+                    }
+                }
+            }
+        }
+        OPENED.put(key, packs);
+        return packs;
+    }
+
+    /** Returns the contents of object SHA from the packs of OBJECTDIR, or
+     *  null if no pack holds it. The multi-pack index is asked first; only
+     *  packs written after it are searched one by one. */
+    public static byte[] find(File objectDir, String sha) {
+        MultiPackIndex midx = MultiPackIndex.open(objectDir);
+        if (midx != null) {
+            int pos = midx.position(sha);
+            if (pos >= 0) {
+                return named(objectDir, midx.packName(pos)).readAt(midx.offset(pos));
+            }
+        }
+        byte[] id = null;
+        for (Pack pack : uncovered(objectDir, midx)) {
+            if (id == null) {
+                id = ObjectStore.toBytes(sha);
+            }
+            int pos = pack.position(id);
+            if (pos >= 0) {
+                return pack.readAt(pack.offset(pos));
+            }
+        }
+        return null;
+    }
+
+    /** Returns true if some pack of OBJECTDIR holds object SHA. */
+    public static boolean contains(File objectDir, String sha) {
+        MultiPackIndex midx = MultiPackIndex.open(objectDir);
+        if (midx != null && midx.position(sha) >= 0) {
+            return true;
+        }
+        byte[] id = null;
+        for (Pack pack : uncovered(objectDir, midx)) {
+            if (id == null) {
+                id = ObjectStore.toBytes(sha);
+            }
+            if (pack.position(id) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns the packs of OBJECTDIR that MIDX, which may be null, does not cover. */
+    private static List<Pack> uncovered(File objectDir, MultiPackIndex midx) {
+        List<Pack> packs = all(objectDir);
+        if (midx == null) {
+            return packs;
+        }
+        List<Pack> result = new ArrayList<>();
+        for (Pack pack : packs) {
+            if (!midx.covers(pack.name())) {
+                result.add(pack);
+            }
+        }
+        return result;
+    }
+
+    /** Returns the size in bytes of object SHA in the packs of OBJECTDIR, or
+     *  -1 if no pack holds it. */
+    public static long size(File objectDir, String sha) {
+        MultiPackIndex midx = MultiPackIndex.open(objectDir);
+        if (midx != null) {
+            int pos = midx.position(sha);
+            if (pos >= 0) {
+                return named(objectDir, midx.packName(pos)).sizeAt(midx.offset(pos));
+            }
+        }
+        byte[] id = null;
+        for (Pack pack : uncovered(objectDir, midx)) {
+            if (id == null) {
+                id = ObjectStore.toBytes(sha);
+            }
+            int pos = pack.position(id);
+            if (pos >= 0) {
+                return pack.sizeAt(pack.offset(pos));
+            }
+        }
+        return -1;
+    }
+
+    /** Returns the type of object SHA in the packs of OBJECTDIR, or -1 if no
+     *  pack holds it. */
+    public static int type(File objectDir, String sha) {
+        MultiPackIndex midx = MultiPackIndex.open(objectDir);
+        if (midx != null) {
+            int pos = midx.position(sha);
+            if (pos >= 0) {
+                return midx.type(pos);
+            }
+        }
+        byte[] id = null;
+        for (Pack pack : uncovered(objectDir, midx)) {
+            if (id == null) {
+                id = ObjectStore.toBytes(sha);
+            }
+            int pos = pack.position(id);
+            if (pos >= 0) {
+                return pack.type(pos);
+            }
+        }
+        return -1;
+    }
+
+    /** Returns the number of objects in this pack. */
+    int count() {
+        loadIndex();
+        return count;
+    }
+
+    /** Copies the id at POS in the index into DEST at DESTOFFSET. */
+    void copyId(int pos, byte[] dest, int destOffset) {
+        loadIndex();
+        System.arraycopy(index, INDEX_HEADER + pos * ID_BYTES, dest, destOffset, ID_BYTES);
+    }
+
+    /** Returns the type of the object at POS in the index. */
+    int type(int pos) {
+        loadIndex();
+        return index[INDEX_HEADER + count * (ID_BYTES + 8) + pos];
+    }
+
+    /** Returns the ids of all objects of TYPE in this pack. */
+    public List<String> ids(int type) {
+        loadIndex();
+        List<String> result = new ArrayList<>();
+        int typeStart = INDEX_HEADER + count * (ID_BYTES + 8);
+        for (int i = 0; i < count; i++) {
+            if (index[typeStart + i] == type) {
+                result.add(ObjectStore.toHex(index, INDEX_HEADER + i * ID_BYTES));
+            }
+        }
+        return result;
+    }
+
+    /** Returns the position of ID in the index, or -1 if it is absent. */
+    int position(byte[] id) {
+        loadIndex();
+        int lo = 0;
+        int hi = count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compare(index, INDEX_HEADER + mid * ID_BYTES, id);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /** Returns the offset in the pack of the object at POS in the index. */
+    long offset(int pos) {
+        return ByteBuffer.wrap(index).getLong(INDEX_HEADER + count * ID_BYTES + pos * 8);
+    }
+
+    /** Compares the id at OFFSET in BYTES with ID as unsigned bytes. */
+    static int compare(byte[] bytes, int offset, byte[] id) {
+        for (int i = 0; i < ID_BYTES; i++) {
+            int cmp = (bytes[offset + i] & 0xff) - (id[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    /** Reads the index into memory. */
+    private synchronized void loadIndex() {
+        if (index != null) {
+            return;
+        }
+        index = readContents(indexFile);
+        ByteBuffer header = ByteBuffer.wrap(index);
+        if (header.getInt() != INDEX_MAGIC || header.getInt() != INDEX_VERSION) {
+            throw error("Corrupt pack index %s.", indexFile);
+        }
+        count = header.getInt();
+    }
+
+    /** Returns the contents of the object starting at OFFSET in the pack. */
+    byte[] readAt(long offset) {
+        try {
+            FileChannel channel = channel();
+            ByteBuffer head = readFully(channel, offset, ByteBuffer.allocate(5));
+            int type = head.get();
+            byte[] contents = new byte[head.getInt()];
+            readFully(channel, offset + ENTRY_HEADER, ByteBuffer.wrap(contents));
+            contents = inflate(contents);
+            if (type != DELTA) {
+                return contents;
+            }
+            String baseSha = ObjectStore.toHex(contents, 0);
+            byte[] base = DeltaBaseCache.get(baseSha);
+            if (base == null) {
+                int pos = position(ObjectStore.toBytes(baseSha));
+                if (pos < 0) {
+                    throw error("Pack %s lacks delta base %s.", packFile, baseSha);
+                }
+                base = readAt(offset(pos));
+                DeltaBaseCache.put(baseSha, base);
+            }
+            return Delta.apply(base, Arrays.copyOfRange(contents, ID_BYTES, contents.length));
+        } catch (IOException | DataFormatException e) {
+            throw error("Cannot read pack %s: %s", packFile, e.getMessage());
+        }
+    }
+
+    /** Returns the size of the object starting at OFFSET in the pack, read
+     *  from its entry header. */
+    long sizeAt(long offset) {
+        try {
+            ByteBuffer head = readFully(channel(), offset, ByteBuffer.allocate(ENTRY_HEADER));
+            return head.getInt(5);
+        } catch (IOException e) {
+            throw error("Cannot read pack %s: %s", packFile, e.getMessage());
+        }
+    }
+
+    /** Returns the open pack file, opening it and checking its header on
+     *  first use. */
+    private synchronized FileChannel channel() throws IOException {
+        if (data == null) {
+            FileChannel channel = FileChannel.open(packFile.toPath(), StandardOpenOption.READ);
+            ByteBuffer header = readFully(channel, 0, ByteBuffer.allocate(8));
+            if (header.getInt() != PACK_MAGIC || header.getInt() != VERSION) {
+                channel.close();
+                throw error("Corrupt pack %s.", packFile);
+            }
+            data = channel;
+        }
+        return data;
+    }
+
+    /** Fills BUFFER from CHANNEL at POSITION and returns it ready to read. */
+    private static ByteBuffer readFully(FileChannel channel, long position, ByteBuffer buffer)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("unexpected end of file");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /** Returns the inflated form of DEFLATED. */
+    private static byte[] inflate(byte[] deflated) throws DataFormatException {
+        Inflater inflater = new Inflater();
+        inflater.setInput(deflated);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(deflated.length * 2);
+        byte[] buffer = new byte[ObjectStore.BUFFER_SIZE];
+        while (!inflater.finished()) {
+            int n = inflater.inflate(buffer);
+            if (n == 0 && inflater.needsInput()) {
+                throw new DataFormatException("truncated object");
+            }
+            out.write(buffer, 0, n);
+        }
+        inflater.end();
+        return out.toByteArray();
+    }
+
+    /** Returns the deflated form of CONTENTS, at the configured level. */
+    private static byte[] deflate(byte[] contents) {
+        Deflater deflater = new Deflater(ObjectStore.compressionLevel());
+        deflater.setInput(contents);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(contents.length / 2 + 64);
+        byte[] buffer = new byte[ObjectStore.BUFFER_SIZE];
+        while (!deflater.finished()) {
+            out.write(buffer, 0, deflater.deflate(buffer));
+        }
+        deflater.end();
+        return out.toByteArray();
+    }
+
+    /** Packs the objects of OBJECTDIR into one new pack and deletes the loose
+     *  copies. If ALL, every packed object is also moved into the new pack and
+     *  the old packs are deleted; otherwise only loose objects are packed and
+     *  existing packs are left alone. The multi-pack index is then rewritten
+     *  to cover every pack. */
+    public static void repack(File objectDir, boolean all) {
+        repack(objectDir, all, new HashSet<>());
+    }
+
+    /** Repacks OBJECTDIR as above, but drops the objects in EXCLUDE, loose
+     *  or packed, instead of packing them. */
+    public static void repack(File objectDir, boolean all, Set<String> exclude) {
+        List<String> ids = new ArrayList<>();
+        List<Integer> types = new ArrayList<>();
+        List<File> packed = new ArrayList<>();
+        HashSet<String> seen = new HashSet<>();
+        List<Pack> oldPacks = all ? all(objectDir) : new ArrayList<>();
+        for (int type : ObjectStore.TYPES) {
+            File dir = ObjectStore.looseDir(objectDir, type);
+            List<String> loose = plainFilenamesIn(dir);
+            if (loose != null) {
+                for (String sha : loose) {
+                    if ((all || !contains(objectDir, sha)) && !exclude.contains(sha)
+                            && seen.add(sha)) {
+                        ids.add(sha);
+                        types.add(type);
+                    }
+                    packed.add(join(dir, sha));
+                }
+            }
+            for (Pack pack : oldPacks) {
+                for (String sha : pack.ids(type)) {
+                    if (!exclude.contains(sha) && seen.add(sha)) {
+                        ids.add(sha);
+                        types.add(type);
+                    }
+                }
+            }
+        }
+        if (!ids.isEmpty()) {
+            String name = writePack(objectDir, ids, types, exclude);
+            for (Pack pack : oldPacks) {
+                if (!pack.name().equals(name)) {
+                    pack.delete();
+                }
+            }
+            OPENED.remove(objectDir.getAbsolutePath());
+            MultiPackIndex.write(objectDir);
+        }
+        for (File loose : packed) {
+            loose.delete();
+        }
+    }
+
+    /** Closes and deletes this pack and its index. */
+    private void delete() {
+        try {
+            if (data != null) {
+                data.close();
+            }
+        } catch (IOException e) {
+            throw error("Cannot close %s: %s", packFile, e.getMessage());
+        }
+        NAMED.remove(packFile.getAbsolutePath());
+        indexFile.delete();
+        packFile.delete();
+    }
+
+    /** Writes the objects IDS, whose types are TYPES, into a new pack of
+     *  OBJECTDIR and returns its name. File contents are stored as deltas
+     *  where that pays (see orderForDeltas), ignoring commits in EXCLUDE.
+     *  Both files are written under temporary names and the index is
+     *  renamed into place last, so a half-written pack is never read. */
+    private static String writePack(File objectDir, List<String> ids, List<Integer> types,
+                                    Set<String> exclude) {
+        File dir = packDir(objectDir);
+        if (!dir.exists()) {
+            dir.mkdir();
+        }
+        List<Integer> writeOrder = new ArrayList<>();
+        List<String> contents = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i++) {
+            if (types.get(i) == ObjectStore.CONTENTS) {
+                contents.add(ids.get(i));
+            } else {
+                writeOrder.add(i);
+            }
+        }
+        HashMap<String, Integer> positions = new HashMap<>();
+        for (int i = 0; i < ids.size(); i++) {
+            positions.put(ids.get(i), i);
+        }
+        for (String sha : orderForDeltas(objectDir, contents, exclude)) {
+            writeOrder.add(positions.get(sha));
+        }
+        Integer[] order = new Integer[ids.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> ids.get(a).compareTo(ids.get(b)));
+        String name = "pack-" + sha1(String.join("", ids));
+        File packTemp = join(dir, name + ".pack.tmp");
+        File indexTemp = join(dir, name + ".idx.tmp");
+        long[] offsets = new long[ids.size()];
+        int window = Config.getInt(Config.PACK_WINDOW, 10);
+        int maxDepth = Config.getInt(Config.PACK_DEPTH, 10);
+        ArrayDeque<DeltaBase> bases = new ArrayDeque<>();
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(packTemp)))) {
+            out.writeInt(PACK_MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(ids.size());
+            long offset = 12;
+            for (int i : writeOrder) {
+                int type = types.get(i);
+                byte[] object = ObjectStore.read(objectDir, type, ids.get(i));
+                int entryType = type;
+                byte[] entry = object;
+                int depth = 0;
+                if (type == ObjectStore.CONTENTS && window > 0) {
+                    DeltaBase best = null;
+                    byte[] bestDelta = null;
+                    for (DeltaBase base : bases) {
+                        if (base.depth >= maxDepth || base.contents.length > 2 * object.length
+                                || object.length > 2 * base.contents.length) {
+                            continue;
+                        }
+                        byte[] delta = Delta.create(base.contents, object);
+                        if (bestDelta == null || delta.length < bestDelta.length) {
+                            best = base;
+                            bestDelta = delta;
+                        }
+                    }
+                    if (bestDelta != null && bestDelta.length + ID_BYTES < object.length / 2) {
+                        entryType = DELTA;
+                        entry = new byte[ID_BYTES + bestDelta.length];
+                        System.arraycopy(ObjectStore.toBytes(best.sha), 0, entry, 0, ID_BYTES);
+                        System.arraycopy(bestDelta, 0, entry, ID_BYTES, bestDelta.length);
+                        depth = best.depth + 1;
+                    }
+                    bases.addFirst(new DeltaBase(ids.get(i), object, depth));
+                    if (bases.size() > window) {
+                        bases.removeLast();
+                    }
+                }
+                byte[] deflated = deflate(entry);
+                offsets[i] = offset;
+                out.writeByte(entryType);
+                out.writeInt(deflated.length);
+                out.writeInt(object.length);
+                out.write(deflated);
+                offset += ENTRY_HEADER + deflated.length;
+            }
+        } catch (IOException e) {
+            throw error("Cannot write pack %s: %s", packTemp, e.getMessage());
+        }
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(indexTemp)))) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(INDEX_VERSION);
+            out.writeInt(ids.size());
+            for (int i : order) {
+                out.write(ObjectStore.toBytes(ids.get(i)));
+            }
+            for (int i : order) {
+                out.writeLong(offsets[i]);
+            }
+            for (int i : order) {
+                out.writeByte(types.get(i));
+            }
+        } catch (IOException e) {
+            throw error("Cannot write pack index %s: %s", indexTemp, e.getMessage());
+        }
+        Pack existing = NAMED.get(join(dir, name + ".pack").getAbsolutePath());
+        if (existing != null) {
+            existing.delete();
+        }
+        if (!packTemp.renameTo(join(dir, name + ".pack"))
+                || !indexTemp.renameTo(join(dir, name + ".idx"))) {
+            throw error("Cannot write pack %s.", name);
+        }
+        OPENED.remove(objectDir.getAbsolutePath());
+        return name;
+    }
+
+    /** Returns the file contents CONTENTS of OBJECTDIR in the order repack
+     *  should write them: grouped by the path they were committed under,
+     *  and largest first within a path, so each version sits in the delta
+     *  window next to its neighbours. Contents no commit refers to come last.
+     *  Commits in EXCLUDE are not consulted. */
+    private static List<String> orderForDeltas(File objectDir, List<String> contents,
+                                               Set<String> exclude) {
+        HashMap<String, String> paths = new HashMap<>();
+        for (String commitID : ObjectStore.list(objectDir, ObjectStore.COMMIT)) {
+            if (exclude.contains(commitID)) {
+                continue;
+            }
+            Commit commit = Commit.fromFile(objectDir, commitID);
+            for (Map.Entry<String, String> entry : commit.getCommitMap().entrySet()) {
+                paths.putIfAbsent(entry.getValue(), entry.getKey());
+            }
+        }
+        HashMap<String, Long> sizes = new HashMap<>();
+        for (String sha : contents) {
+            sizes.put(sha, ObjectStore.size(objectDir, ObjectStore.CONTENTS, sha));
+        }
+        List<String> result = new ArrayList<>(contents);
+        result.sort((a, b) -> {
+            String pathA = paths.getOrDefault(a, "\uffff");
+            String pathB = paths.getOrDefault(b, "\uffff");
+            if (!pathA.equals(pathB)) {
+                return pathA.compareTo(pathB);
+            }
+            return Long.compare(sizes.get(b), sizes.get(a));
+        });
+        return result;
+    }
+
+    /** Recently read delta bases, so reading several versions of a file does
+     *  not rebuild their shared bases each time. Least recently used bases
+     *  are dropped once the cache holds more than LIMIT bytes. */
+    private static class DeltaBaseCache {
+        /** Most bytes the cache holds. */
+        private static final long LIMIT = 16 * 1024 * 1024;
+        /** Cached bases by id, least recently used first. */
+        private static final LinkedHashMap<String, byte[]> BASES =
+                new LinkedHashMap<>(16, 0.75f, true);
+        /** Bytes held in BASES. */
+        private static long size;
+
+        /** Returns the cached base SHA, or null. */
+        static synchronized byte[] get(String sha) {
+            return BASES.get(sha);
+        }
+
+        /** Caches CONTENTS as base SHA. */
+        static synchronized void put(String sha, byte[] contents) {
+            if (contents.length > LIMIT || BASES.containsKey(sha)) {
+                return;
+            }
+            BASES.put(sha, contents);
+            size += contents.length;
+            Iterator<byte[]> oldest = BASES.values().iterator();
+            while (size > LIMIT) {
+                size -= oldest.next().length;
+                oldest.remove();
+            }
+        }
+    }
+
+    /** A recently written object that later objects may be deltas against. */
+    private static class DeltaBase {
+        /** Id of the object. */
+        private final String sha;
+        /** Its contents. */
+        private final byte[] contents;
+        /** Number of deltas that must be applied to read it. */
+        private final int depth;
+
+        /** A base SHA with CONTENTS at DEPTH. */
+        DeltaBase(String sha, byte[] contents, int depth) {
+            this.sha = sha;
+            this.contents = contents;
+            this.depth = depth;
+        }
+    }
+}
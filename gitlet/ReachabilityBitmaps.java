@@ -0,0 +1,225 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+import static gitlet.Utils.*;
+
+/** Stored sets of ancestors, so that ancestry and "what does the other side
+ *  lack" are answered by combining bitmaps instead of walking history. Bit
+ *  N of a bitmap stands for row N of the commit-graph, whose rows never
+ *  move, so a bitmap stays right as history grows. The bitmaps file holds
+ *  one bitmap for each selected commit, such as the branch tips when
+ *  repack runs; a commit with none is answered by walking the graph only
+ *  as far as commits that have one.
+ *
+ *  @author Jeffrey Huang
+ */
+public class ReachabilityBitmaps {
+
+    /** Magic number at the start of the file. */
+    private static final int MAGIC = 0x47424d50;
+
+    /** Version of the format. */
+    private static final int VERSION = 1;
+
+    /** Bytes in a raw object id. */
+    private static final int ID_BYTES = UID_LENGTH / 2;
+
+    /** Stored bitmaps already read, keyed by the path of their .objects
+     *  directory; each maps a commit-graph row to its bitmap. */
+    private static final HashMap<String, HashMap<Integer, Bitmap>> OPENED = new HashMap<>();
+
+    /** Returns the bitmaps file of OBJECTDIR. */
+    public static File bitmapFile(File objectDir) {
+        return join(objectDir, "bitmaps");
+    }
+
+    /** Returns the stored bitmaps of OBJECTDIR by commit-graph row. A bitmap
+     *  whose commit is no longer at the row it was written for is dropped. */
+    private static HashMap<Integer, Bitmap> stored(File objectDir) {
+        String key = objectDir.getAbsolutePath();
+        HashMap<Integer, Bitmap> result = OPENED.get(key);
+        if (result != null) {
+            return result;
+        }
+        result = new HashMap<>();
+        OPENED.put(key, result);
+        File file = bitmapFile(objectDir);
+        if (!file.isFile()) {
+            return result;
+        }
+        ByteBuffer data;
+        try {
+            data = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        } catch (IOException e) {
+            throw error("Cannot read %s: %s", file, e.getMessage());
+        }
+        if (data.limit() < 12 || data.getInt() != MAGIC || data.getInt() != VERSION) {
+            throw error("Corrupt bitmaps file %s.", file);
+        }
+        CommitGraph graph = CommitGraph.open(objectDir);
+        int count = data.getInt();
+        byte[] id = new byte[ID_BYTES];
+        for (int i = 0; i < count; i++) {
+            data.get(id);
+            int row = data.getInt();
+            byte[] encoded = new byte[data.getInt()];
+            data.get(encoded);
+            if (graph.row(ObjectStore.toHex(id, 0)) == row) {
+                result.put(row, Bitmap.decode(encoded));
+            }
+        }
+        return result;
+    }
+
+    /** Replaces the bitmaps of OBJECTDIR with one for each of COMMITS that
+     *  is in the commit-graph. */
+    public static void write(File objectDir, Collection<String> commits) {
+        CommitGraph graph = CommitGraph.open(objectDir);
+        TreeMap<Integer, byte[]> encoded = new TreeMap<>();
+        for (String sha : commits) {
+            int row = graph.row(sha);
+            if (row != CommitGraph.NONE && !encoded.containsKey(row)) {
+                encoded.put(row, reachable(objectDir, sha).encode());
+            }
+        }
+        int size = 12;
+        for (byte[] bitmap : encoded.values()) {
+            size += ID_BYTES + 8 + bitmap.length;
+        }
+        ByteBuffer out = ByteBuffer.allocate(size);
+        out.putInt(MAGIC).putInt(VERSION).putInt(encoded.size());
+        for (Map.Entry<Integer, byte[]> entry : encoded.entrySet()) {
+            out.put(ObjectStore.toBytes(graph.id(entry.getKey())));
+            out.putInt(entry.getKey()).putInt(entry.getValue().length).put(entry.getValue());
+        }
+        File file = bitmapFile(objectDir);
+        File temp = new File(file.getPath() + ".tmp");
+        writeContents(temp, out.array());
+        ObjectStore.replace(temp, file);
+        OPENED.remove(objectDir.getAbsolutePath());
+    }
+
+    /** Returns the rows of the commit SHA of OBJECTDIR and its ancestors, or
+     *  null if SHA is not in the commit-graph. */
+    public static Bitmap reachable(File objectDir, String sha) {
+        CommitGraph graph = CommitGraph.open(objectDir);
+        int start = graph.row(sha);
+        if (start == CommitGraph.NONE) {
+            return null;
+        }
+        HashMap<Integer, Bitmap> stored = stored(objectDir);
+        Bitmap result = new Bitmap();
+        Deque<Integer> pending = new ArrayDeque<>();
+        pending.push(start);
+        while (!pending.isEmpty()) {
+            int row = pending.pop();
+            if (result.get(row)) {
+                continue;
+            }
+            Bitmap bitmap = stored.get(row);
+            if (bitmap != null) {
+                result.or(bitmap);
+                continue;
+            }
+            result.set(row);
+            if (graph.parent1(row) != CommitGraph.NONE) {
+                pending.push(graph.parent1(row));
+            }
+            if (graph.parent2(row) != CommitGraph.NONE) {
+                pending.push(graph.parent2(row));
+            }
+        }
+        return result;
+    }
+
+    /** Returns true if OBJECTDIR has stored bitmaps. */
+    public static boolean exist(File objectDir) {
+        return !stored(objectDir).isEmpty();
+    }
+
+    /** Returns the commits of OBJECTDIR that WANT reaches and HAVE does not,
+     *  parents before children, or null if either is not in the
+     *  commit-graph. Without stored bitmaps both sides are walked together
+     *  instead, so only the commits between them are visited. */
+    public static List<String> missing(File objectDir, String want, String have) {
+        if (!exist(objectDir)) {
+            return walkMissing(objectDir, want, have);
+        }
+        Bitmap result = reachable(objectDir, want);
+        Bitmap known = reachable(objectDir, have);
+        if (result == null || known == null) {
+            return null;
+        }
+        result.andNot(known);
+        CommitGraph graph = CommitGraph.open(objectDir);
+        List<String> commits = new ArrayList<>();
+        for (int row = result.nextSetBit(0); row >= 0; row = result.nextSetBit(row + 1)) {
+            commits.add(graph.id(row));
+        }
+        return commits;
+    }
+
+    /** Returns what missing does, walking the rows WANT and HAVE reach
+     *  highest generation first. A row is popped only after every row that
+     *  reaches it, so by then it is marked if HAVE reaches it. The walk
+     *  stops once every queued row is marked. */
+    private static List<String> walkMissing(File objectDir, String want, String have) {
+        CommitGraph graph = CommitGraph.open(objectDir);
+        int wantRow = graph.row(want);
+        int haveRow = graph.row(have);
+        if (wantRow == CommitGraph.NONE || haveRow == CommitGraph.NONE) {
+            return null;
+        }
+        HashMap<Integer, Boolean> known = new HashMap<>();
+        PriorityQueue<Integer> queue = new PriorityQueue<>((a, b) ->
+                graph.generation(a) != graph.generation(b)
+                        ? Integer.compare(graph.generation(b), graph.generation(a))
+                        : Integer.compare(b, a));
+        known.put(haveRow, true);
+        queue.add(haveRow);
+        int unknown = 0;
+        if (known.putIfAbsent(wantRow, false) == null) {
+            queue.add(wantRow);
+            unknown += 1;
+        }
+        List<String> commits = new ArrayList<>();
+        while (unknown > 0) {
+            int row = queue.remove();
+            boolean reached = known.get(row);
+            if (!reached) {
+                unknown -= 1;
+                commits.add(graph.id(row));
+            }
+            for (int parent : new int[] {graph.parent1(row), graph.parent2(row)}) {
+                if (parent == CommitGraph.NONE) {
+                    continue;
+                }
+                Boolean old = known.get(parent);
+                if (old == null) {
+                    known.put(parent, reached);
+                    queue.add(parent);
+                    unknown += reached ? 0 : 1;
+                } else if (reached && !old) {
+                    known.put(parent, true);
+                    unknown -= 1;
+                }
+            }
+        }
+        Collections.reverse(commits);
+        return commits;
+    }
+}
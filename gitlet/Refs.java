@@ -0,0 +1,206 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static gitlet.Utils.*;
+
+/** The branches and HEAD of a repository, one small file each, so that
+ *  moving a branch rewrites a single 41-byte file whatever the length of
+ *  history. A branch NAME is the file .gitlet/refs/heads/NAME holding its
+ *  commit id; names with slashes, such as the R1/master a fetch makes, sit
+ *  in subdirectories. HEAD holds "ref: refs/heads/NAME" for the current
+ *  branch. Branches may also be listed in .gitlet/packed-refs, one
+ *  "ID NAME" line each, which pack-refs writes so that many branches are
+ *  one file; a loose file overrides its packed line.
+ *  Every file is changed by writing NAME.lock, which fails if the lock
+ *  exists, and renaming it over NAME, so a reader never sees a half-written
+ *  ref and two writers cannot both succeed. Every method takes the .gitlet
+ *  directory so the same code serves remotes.
+ *
+ *  @author Jeffrey Huang
+ */
+public class Refs {
+
+    /** Start of the contents of HEAD. */
+    private static final String HEAD_PREFIX = "ref: refs/heads/";
+
+    /** Suffix of lock files. */
+    private static final String LOCK = ".lock";
+
+    /** Returns the directory of loose branches of GITLETDIR. */
+    private static File headsDir(File gitletDir) {
+        return join(gitletDir, "refs", "heads");
+    }
+
+    /** Returns the packed-refs file of GITLETDIR. */
+    private static File packedFile(File gitletDir) {
+        return join(gitletDir, "packed-refs");
+    }
+
+    /** Returns the name of the current branch of GITLETDIR. */
+    public static String headName(File gitletDir) {
+        String head = readContentsAsString(join(gitletDir, "HEAD")).trim();
+        if (!head.startsWith(HEAD_PREFIX)) {
+            throw error("Corrupt HEAD in %s.", gitletDir);
+        }
+        return head.substring(HEAD_PREFIX.length());
+    }
+
+    /** Makes NAME the current branch of GITLETDIR. */
+    public static void setHeadName(File gitletDir, String name) {
+        update(join(gitletDir, "HEAD"), HEAD_PREFIX + name + "\n");
+    }
+
+    /** Returns the id of the commit at the head of the current branch. */
+    public static String head(File gitletDir) {
+        return branch(gitletDir, headName(gitletDir));
+    }
+
+    /** Returns the commit id of the branch NAME of GITLETDIR, or null if
+     *  there is no such branch. */
+    public static String branch(File gitletDir, String name) {
+        File loose = join(headsDir(gitletDir), name);
+        if (loose.isFile()) {
+            return readContentsAsString(loose).trim();
+        }
+        return readPacked(gitletDir).get(name);
+    }
+
+    /** Returns true if GITLETDIR has a branch NAME. */
+    public static boolean hasBranch(File gitletDir, String name) {
+        return branch(gitletDir, name) != null;
+    }
+
+    /** Points the branch NAME of GITLETDIR at the commit SHA, creating the
+     *  branch if needed. */
+    public static void setBranch(File gitletDir, String name, String sha) {
+        update(join(headsDir(gitletDir), name), sha + "\n");
+    }
+
+    /** Moves the current branch of GITLETDIR to the commit SHA. */
+    public static void setHead(File gitletDir, String sha) {
+        setBranch(gitletDir, headName(gitletDir), sha);
+    }
+
+    /** Deletes the branch NAME of GITLETDIR, loose and packed. */
+    public static void deleteBranch(File gitletDir, String name) {
+        File loose = join(headsDir(gitletDir), name);
+        File looseLock = lock(loose);
+        try {
+            TreeMap<String, String> packed = readPacked(gitletDir);
+            if (packed.remove(name) != null) {
+                writePacked(gitletDir, packed);
+            }
+            loose.delete();
+        } finally {
+            looseLock.delete();
+        }
+    }
+
+    /** Returns every branch of GITLETDIR and its commit id, by name. */
+    public static TreeMap<String, String> branches(File gitletDir) {
+        TreeMap<String, String> result = readPacked(gitletDir);
+        addLoose(headsDir(gitletDir), "", result);
+        return result;
+    }
+
+    /** Moves every loose branch of GITLETDIR into packed-refs and deletes
+     *  the loose files. */
+    public static void pack(File gitletDir) {
+        TreeMap<String, String> all = branches(gitletDir);
+        writePacked(gitletDir, all);
+        for (String name : all.keySet()) {
+            File loose = join(headsDir(gitletDir), name);
+            if (loose.isFile()) {
+                File looseLock = lock(loose);
+                if (readContentsAsString(loose).trim().equals(all.get(name))) {
+                    loose.delete();
+                }
+                looseLock.delete();
+            }
+        }
+    }
+
+    /** Adds the loose branches in DIR, whose names start with PREFIX, and
+     *  those of its subdirectories to RESULT. */
+    private static void addLoose(File dir, String prefix, Map<String, String> result) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = prefix + file.getName();
+            if (file.isDirectory()) {
+                addLoose(file, name + "/", result);
+            } else if (!name.endsWith(LOCK)) {
+                result.put(name, readContentsAsString(file).trim());
+            }
+        }
+    }
+
+    /** Returns the branches listed in packed-refs of GITLETDIR. */
+    private static TreeMap<String, String> readPacked(File gitletDir) {
+        TreeMap<String, String> result = new TreeMap<>();
+        File file = packedFile(gitletDir);
+        if (!file.isFile()) {
+            return result;
+        }
+        try {
+            List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+            for (String line : lines) {
+                int space = line.indexOf(' ');
+                if (space > 0) {
+                    result.put(line.substring(space + 1), line.substring(0, space));
+                }
+            }
+        } catch (IOException e) {
+            throw error("Cannot read %s: %s", file, e.getMessage());
+        }
+        return result;
+    }
+
+    /** Replaces packed-refs of GITLETDIR with BRANCHES. */
+    private static void writePacked(File gitletDir, Map<String, String> branches) {
+        StringBuilder contents = new StringBuilder();
+        for (Map.Entry<String, String> branch : branches.entrySet()) {
+            contents.append(branch.getValue()).append(' ').append(branch.getKey()).append('\n');
+        }
+        update(packedFile(gitletDir), contents.toString());
+    }
+
+    /** Replaces the contents of FILE with CONTENTS through its lock file. */
+    private static void update(File file, String contents) {
+        File lock = lock(file);
+        try {
+            writeContents(lock, contents);
+            Files.move(lock.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw error("Cannot update %s: %s", file, e.getMessage());
+        } finally {
+            lock.delete();
+        }
+    }
+
+    /** Creates the lock file of FILE and returns it. */
+    private static File lock(File file) {
+        File lock = new File(file.getPath() + LOCK);
+        lock.getParentFile().mkdirs();
+        try {
+            Files.createFile(lock.toPath());
+        } catch (FileAlreadyExistsException e) {
+            throw error("Cannot lock %s: another Gitlet command may be running.", file);
+        } catch (IOException e) {
+            throw error("Cannot lock %s: %s", file, e.getMessage());
+        }
+        return lock;
+    }
+}
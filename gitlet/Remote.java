@@ -1,14 +1,26 @@
 package gitlet;
 
 import java.io.File;
-import java.io.IOException;
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.HashMap;
 
 import static gitlet.Utils.join;
+import static gitlet.Utils.readContents;
+import static gitlet.Utils.writeContents;
 
+/** The remotes of a repository, stored in the encoding of Codec: a version
+ *  byte and the number of remotes, followed by each name and address in
+ *  name order. */
 public class Remote implements Serializable {
 
+    /** The id older versions computed for this class, so their remote
+     *  files still read. */
+    private static final long serialVersionUID = -6938363444142291522L;
+
+    /** Version of the encoding this class writes. */
+    private static final int VERSION = 1;
+
     /** The remote file. */
     public static final File REMOTEFILE = join(Repository.GITLET_DIR, ".REMOTE");
 
@@ -17,19 +29,32 @@ public class Remote implements Serializable {
 
     /** Saves the REMOTEFILE to a file for future use. */
     public void saveRemote() {
-        if (!REMOTEFILE.exists()) {
-            try {
-                REMOTEFILE.createNewFile();
-            } catch (IOException e) {
-                System.err.println(e);
-            }
+        Codec.Writer out = new Codec.Writer();
+        out.writeByte(VERSION);
+        String[] names = remoteMap.keySet().toArray(new String[0]);
+        Arrays.sort(names);
+        out.writeVarint(names.length);
+        for (String name : names) {
+            out.writeString(name);
+            out.writeString(remoteMap.get(name));
         }
-        Utils.writeObject(REMOTEFILE, this);
+        writeContents(REMOTEFILE, out.toByteArray());
     }
 
     /** Returns the remote. */
     public static Remote fromFile() {
-        return Utils.readObject(REMOTEFILE, Remote.class);
+        byte[] data = readContents(REMOTEFILE);
+        if (Codec.isJavaSerialized(data)) {
+            return Codec.readJava(data, Remote.class);
+        }
+        Codec.Reader in = new Codec.Reader(data);
+        Codec.checkVersion(in.readByte(), VERSION, "remote");
+        Remote remote = new Remote();
+        int count = in.readVarint();
+        for (int i = 0; i < count; i++) {
+            remote.remoteMap.put(in.readString(), in.readString());
+        }
+        return remote;
     }
 
     /** Returns the remoteMap. */
@@ -1,9 +1,14 @@
 package gitlet;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.stream.IntStream;
 
 import static gitlet.Utils.*;
 
@@ -41,10 +46,14 @@ public class Repository implements Serializable {
      **/
     public static final File COMMIT_DIR = join(OBJECT_DIR, ".commits");
 
-    /**
-     * A blob folder holding all blobs.
-     **/
-    public static final File BLOB_DIR = join(OBJECT_DIR, ".blobs");
+    /** Commits global-log decodes at a time. */
+    private static final int LOG_BATCH = 1024;
+
+    /** Bytes buffered before output is written. */
+    private static final int OUTPUT_BUFFER = 1 << 16;
+
+    /** Most matches listed for an ambiguous abbreviated commit id. */
+    private static final int AMBIGUOUS_SHOWN = 10;
 
     /**
      * Creates a new Gitlet version-control system in the current directory.
@@ -68,20 +77,15 @@ public class Repository implements Serializable {
         GITLET_DIR.mkdir();
         OBJECT_DIR.mkdir();
         COMMIT_DIR.mkdir();
-        BLOB_DIR.mkdir();
         Blobs.getFileDir().mkdir();
+        Config.set(Config.FORMAT, Integer.toString(Migration.FORMAT));
         StagingArea sa = new StagingArea();
         sa.saveStagingArea();
         Commit initialCommit = new Commit("initial commit",
                 "Wed Dec 31 16:00:00 1969 -0800", null);
-        Trees tree = new Trees();
         initialCommit.saveCommmit();
-        tree.setMaster(initialCommit.getCommitSHA1code());
-        tree.setHead(initialCommit.getCommitSHA1code());
-        tree.setHeadName("master");
-        tree.getBranchHolder().put("master", tree.getMaster());
-        tree.getAllCommitsMap().put(initialCommit.getCommitSHA1code(), initialCommit);
-        tree.saveTree();
+        Refs.setBranch(GITLET_DIR, "master", initialCommit.getCommitSHA1code());
+        Refs.setHeadName(GITLET_DIR, "master");
         Remote remote = new Remote();
         remote.saveRemote();
     }
@@ -97,9 +101,11 @@ public class Repository implements Serializable {
      * the staging area if it is already there (as can happen when a file is
      * changed, added, and then changed back to it’s original version). The file
      * will no longer be staged for removal (see gitlet rm), if it was at the
-     * time of the command.
+     * time of the command. A file the StatCache shows unchanged since its
+     * contents were stored is not read again.
      */
     public static void add(String fileName) {
+        fileName = Tree.normalize(fileName);
         File tempFile = join(CWD, fileName);
         if (!tempFile.exists()) { //Checks if file exists already
             System.out.println("File does not exist");
@@ -109,12 +115,13 @@ public class Repository implements Serializable {
         if (!Blobs.getFileDir().exists()) {
             Blobs.getFileDir().mkdir();
         }
-        Blobs newBlob = new Blobs(fileName);
+        String newSHA1code = StatCache.knownId(fileName);
+        if (newSHA1code == null
+                || !ObjectStore.contains(OBJECT_DIR, ObjectStore.CONTENTS, newSHA1code)) {
+            newSHA1code = new Blobs(fileName).getFileSHA1code();
+        }
         if (sa.getAdditionMap().containsKey(fileName)) {
-            String newSHA1code = newBlob.getFileSHA1code();
-            String blobSHA1code = sa.getAdditionMap().get(fileName);
-            Blobs oldBlob = Blobs.fromFile(blobSHA1code);
-            String oldSHA1code = oldBlob.getFileSHA1code();
+            String oldSHA1code = sa.getAdditionMap().get(fileName);
             if (newSHA1code.equals(oldSHA1code)) {
                 return;
             }
@@ -123,16 +130,14 @@ public class Repository implements Serializable {
             sa.getDeletionMap().remove(fileName);
             sa.saveStagingArea();
         }
-        newBlob.saveBlob();
-        Trees tree = Trees.fromFile();
-        Commit currentCommit = Commit.fromFile(tree.getHead());
+        Commit currentCommit = Commit.fromFile(Refs.head(GITLET_DIR));
         HashMap<String, String> commitMap = currentCommit.getCommitMap();
         if (commitMap.get(fileName) != null
-                && commitMap.get(fileName).equals(newBlob.getBlobSHA1code())) {
+                && commitMap.get(fileName).equals(newSHA1code)) {
             return;
         }
         if (!sa.getDeletionMap().containsKey(fileName)) {
-            sa.addToAddition(fileName, newBlob.getBlobSHA1code());
+            sa.addToAddition(fileName, newSHA1code);
         }
         sa.saveStagingArea();
     }
@@ -160,36 +165,36 @@ public class Repository implements Serializable {
             return;
         }
         String timestamp = Commit.getDate();
-        Trees tree = Trees.fromFile();
-        String master = tree.getHead();
+        String master = Refs.head(GITLET_DIR);
         Commit newCommit = new Commit(message, timestamp, master);
-        HashMap<String, String> additionMap = sa.getAdditionMap();
-        HashMap<String, String> commitMap = newCommit.getCommitMap();
-        String currentCommitID = tree.getHead();
+        String currentCommitID = master;
         Commit currentCommit = Commit.fromFile(currentCommitID);
-        for (String key : currentCommit.getCommitMap().keySet()) {
-            commitMap.put(key, currentCommit.getCommitMap().get(key));
-        }
-        for (Map.Entry<String, String> set : additionMap.entrySet()) {
-            String key = set.getKey();
-            commitMap.put(key, set.getValue());
-        }
-        HashMap<String, String> deletionMap = sa.getDeletionMap();
-        for (Map.Entry<String, String> set : deletionMap.entrySet()) {
-            String key = set.getKey();
-            commitMap.remove(key);
+        newCommit.setTree(stagedTree(sa, currentCommit));
+        newCommit.saveCommmit();
+        for (String key : sa.getDeletionMap().keySet()) {
+            StatCache.forget(key);
         }
+        Refs.setHead(GITLET_DIR, newCommit.getCommitSHA1code());
         sa.clear();
         sa.saveStagingArea();
-        newCommit.saveCommmit();
-        String sha1code = newCommit.getCommitSHA1code();
-        tree.getAllCommitsMap().put(sha1code, newCommit);
-        if (tree.getHeadName().contains("master")) {
-            tree.setMaster(sha1code);
-        }
-        tree.setHead(sha1code);
-        tree.getBranchHolder().put(tree.getHeadName(), tree.getHead());
-        tree.saveTree();
+    }
+
+    /**
+     * Returns the root tree of CURRENTCOMMIT with the changes staged in SA
+     * applied. Only the trees of the directories those touch are written;
+     * the rest are shared with CURRENTCOMMIT. A commit from before trees
+     * gets its trees written first.
+     */
+    private static String stagedTree(StagingArea sa, Commit currentCommit) {
+        HashMap<String, String> changes = new HashMap<>(sa.getAdditionMap());
+        for (String key : sa.getDeletionMap().keySet()) {
+            changes.put(key, null);
+        }
+        String tree = currentCommit.getTree();
+        if (tree == null) {
+            tree = Tree.write(OBJECT_DIR, currentCommit.getCommitMap());
+        }
+        return Tree.apply(OBJECT_DIR, tree, changes);
     }
 
     /**
@@ -202,37 +207,19 @@ public class Repository implements Serializable {
             return;
         }
         String timestamp = Commit.getDate();
-        Trees tree = Trees.fromFile();
-        String master = tree.getHead();
-        String parent2sha1 = tree.getBranchHolder().get(parent2);
+        String master = Refs.head(GITLET_DIR);
+        String parent2sha1 = Refs.branch(GITLET_DIR, parent2);
         Commit newCommit = new Commit(message, timestamp, master, parent2sha1);
-        HashMap<String, String> additionMap = sa.getAdditionMap();
-        HashMap<String, String> commitMap = newCommit.getCommitMap();
-        String currentCommitID = tree.getHead();
+        String currentCommitID = master;
         Commit currentCommit = Commit.fromFile(currentCommitID);
-        for (String key : currentCommit.getCommitMap().keySet()) {
-            commitMap.put(key, currentCommit.getCommitMap().get(key));
-        }
-        for (Map.Entry<String, String> set : additionMap.entrySet()) {
-            String key = set.getKey();
-            commitMap.put(key, set.getValue());
-        }
-        HashMap<String, String> deletionMap = sa.getDeletionMap();
-        for (Map.Entry<String, String> set : deletionMap.entrySet()) {
-            String key = set.getKey();
-            commitMap.remove(key);
+        newCommit.setTree(stagedTree(sa, currentCommit));
+        newCommit.saveCommmit();
+        for (String key : sa.getDeletionMap().keySet()) {
+            StatCache.forget(key);
         }
+        Refs.setHead(GITLET_DIR, newCommit.getCommitSHA1code());
         sa.clear();
         sa.saveStagingArea();
-        newCommit.saveCommmit();
-        String sha1code = newCommit.getCommitSHA1code();
-        tree.getAllCommitsMap().put(sha1code, newCommit);
-        if (tree.getHeadName().contains("master")) {
-            tree.setMaster(sha1code);
-        }
-        tree.setHead(sha1code);
-        tree.getBranchHolder().put(tree.getHeadName(), tree.getHead());
-        tree.saveTree();
     }
 
     /**
@@ -242,9 +229,9 @@ public class Repository implements Serializable {
      * remove it unless it is tracked in the current commit).
      */
     public static void remove(String fileName) {
+        fileName = Tree.normalize(fileName);
         StagingArea sa = StagingArea.fromFile();
-        Trees tree = Trees.fromFile();
-        String currentCommitID = tree.getHead();
+        String currentCommitID = Refs.head(GITLET_DIR);
         Commit currentCommit = Commit.fromFile(currentCommitID);
         if (!(sa.getAdditionMap().containsKey(fileName))
                 && !(currentCommit.getCommitMap().containsKey(fileName))) {
@@ -255,50 +242,137 @@ public class Repository implements Serializable {
             sa.getAdditionMap().remove(fileName);
         }
         if (currentCommit.getCommitMap().containsKey(fileName)) {
-            String blobSHA1code = currentCommit.getCommitMap().get(fileName);
-            Blobs oldBlob = Blobs.fromFile(blobSHA1code);
-            sa.addToDeletion(fileName, oldBlob.getBlobSHA1code());
-            File tempFile = join(CWD, fileName);
-            restrictedDelete(tempFile);
+            sa.addToDeletion(fileName, currentCommit.getCommitMap().get(fileName));
+            deleteWorkingFile(fileName);
         }
         sa.saveStagingArea();
     }
 
+    /**
+     * Deletes the working file NAME, and then any directories that leaves
+     * empty, up to the working directory.
+     */
+    private static void deleteWorkingFile(String name) {
+        StatCache.forget(name);
+        File file = join(CWD, name);
+        if (!name.contains("/")) {
+            restrictedDelete(file);
+            return;
+        }
+        file.delete();
+        File dir = file.getParentFile();
+        while (!dir.equals(CWD) && dir.delete()) {
+            dir = dir.getParentFile();
+        }
+    }
+
     /**
      * Starting at the current head commit, display information about each
      * commit backwards along the commit tree until the initial commit,
-     * following the first parent commit links, ignoring any second parents
-     * found in merge commits. (In regular Git, this is what you get with git
-     * log --first-parent). This set of commit nodes is called the commit’s
-     * history. For every node in this history, the information it should
-     * display is the commit id, the time the commit was made, and the commit
-     * message.
+     * following the first parent commit links. Commits are read one at a
+     * time and their trees are not, so printing LIMIT commits reads about
+     * LIMIT objects however long the history. The first SKIP commits that
+     * would be printed are not, and those are passed over in the commit-graph
+     * without being read. Each commit is printed as its usual entry, or by
+     * Commit.format with FORMAT if it is not null. If FILENAME is not null,
+     * only the commits that changed it from their first parent are counted;
+     * commits whose changed-paths filter rules it out are not read.
      */
-    public static void log() {
-        Trees tree = Trees.fromFile();
-        String currentCommitID = tree.getHead();
-        Commit currentCommit = Commit.fromFile(currentCommitID);
-        currentCommit.getLogMessage();
-        String parent = currentCommit.getParent();
-        while (parent != null) {
-            Commit parentCommit = tree.getCommit(parent);
-            parentCommit.getLogMessage();
-            parent = parentCommit.getParent();
+    public static void log(int limit, int skip, String format, String filename) {
+        if (filename != null) {
+            filename = Tree.normalize(filename);
+        }
+        PrintWriter out = output();
+        CommitGraph graph = CommitGraph.open(OBJECT_DIR);
+        String commitID = Refs.head(GITLET_DIR);
+        int shown = 0;
+        while (commitID != null && shown < limit) {
+            int row = graph.row(commitID);
+            if (row != CommitGraph.NONE && (filename == null ? skip > 0
+                    : !ChangedPaths.mayHaveChanged(OBJECT_DIR, row, filename))) {
+                if (filename == null) {
+                    skip -= 1;
+                }
+                int parent = graph.parent1(row);
+                commitID = parent == CommitGraph.NONE ? null : graph.id(parent);
+                continue;
+            }
+            Commit commit = Commit.fromFile(OBJECT_DIR, commitID);
+            String parentID = commit.getParent();
+            if (filename == null || changed(commit, filename)) {
+                if (skip > 0) {
+                    skip -= 1;
+                } else {
+                    out.print(format == null ? commit.logEntry() : commit.format(format) + "\n");
+                    shown += 1;
+                }
+            }
+            commitID = parentID;
+        }
+        out.flush();
+    }
+
+    /** Returns true if COMMIT changed FILENAME from its first parent. */
+    private static boolean changed(Commit commit, String filename) {
+        String parentID = commit.getParent();
+        String before = parentID == null ? null
+                : contentsOf(Commit.fromFile(OBJECT_DIR, parentID), filename);
+        String after = contentsOf(commit, filename);
+        return after == null ? before != null : !after.equals(before);
+    }
+
+    /** Returns the contents id of FILENAME in COMMIT, or null. Only the trees
+     *  on the path of FILENAME are read. */
+    private static String contentsOf(Commit commit, String filename) {
+        if (commit.getTree() == null) {
+            return commit.getCommitMap().get(filename);
         }
+        return Tree.lookup(OBJECT_DIR, commit.getTree(), filename);
     }
 
     /**
      * Like log, except displays information about all commits ever made.
-     * The order of the commits does not matter.
+     * The order of the commits does not matter. Commits are listed lazily
+     * and decoded in parallel, LOG_BATCH at a time, so memory stays bounded
+     * however many there are; each batch is printed in listing order.
      */
     public static void globalLog() {
-        List<String> allCommits = plainFilenamesIn(COMMIT_DIR);
-        for (String commit : allCommits) {
-            Commit currentCommit = Commit.fromFile(commit);
-            currentCommit.getLogMessage();
+        PrintWriter out = output();
+        List<String> batch = new ArrayList<>(LOG_BATCH);
+        ObjectStore.forEach(OBJECT_DIR, ObjectStore.COMMIT, commit -> {
+            batch.add(commit);
+            if (batch.size() == LOG_BATCH) {
+                printEntries(batch, out);
+                batch.clear();
+            }
+        });
+        printEntries(batch, out);
+        out.flush();
+    }
+
+    /**
+     * Decodes the commits BATCH on the common fork-join pool
+     * and prints their log entries to OUT in the order of BATCH.
+     */
+    private static void printEntries(List<String> batch, PrintWriter out) {
+        String[] entries = new String[batch.size()];
+        IntStream.range(0, entries.length).parallel()
+                .forEach(i -> entries[i] = Commit.fromFile(OBJECT_DIR, batch.get(i))
+                        .logEntry());
+        for (String entry : entries) {
+            out.print(entry);
         }
     }
 
+    /**
+     * Returns a buffered writer to standard output, which the caller must
+     * flush.
+     */
+    private static PrintWriter output() {
+        return new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out,
+                StandardCharsets.UTF_8), OUTPUT_BUFFER));
+    }
+
     /**
      * Prints out the ids of all commits that have the given commit message,
      * one per line. If there are multiple such commits, it prints the ids out
@@ -307,16 +381,25 @@ public class Repository implements Serializable {
      * command below.
      */
     public static void find(String commitMessage) {
-        boolean exists = false;
-        List<String> allCommits = plainFilenamesIn(COMMIT_DIR);
-        for (String commit : allCommits) {
-            Commit currentCommit = Commit.fromFile(commit);
-            if ((currentCommit.getCommitMessage()).equals(commitMessage)) {
-                exists = true;
-                System.out.println(currentCommit.getSha1code());
-            }
+        printFound(MessageIndex.find(OBJECT_DIR, commitMessage));
+    }
+
+    /**
+     * Like find, except that it prints the ids of the commits whose message
+     * contains the word WORD, in any case.
+     */
+    public static void findWord(String word) {
+        printFound(MessageIndex.findWord(OBJECT_DIR, word));
+    }
+
+    /**
+     * Prints the commit ids FOUND one per line, or that there are none.
+     */
+    private static void printFound(List<String> found) {
+        for (String commit : found) {
+            System.out.println(commit);
         }
-        if (!exists) {
+        if (found.isEmpty()) {
             System.out.println("Found no commit with that message.");
         }
     }
@@ -324,16 +407,15 @@ public class Repository implements Serializable {
     /**
      * Displays what branches currently exist, and marks the current
      * branch with a *. Also displays what files have been staged
-     * for addition or removal.
+     * for addition or removal. Only tracked and staged files are hashed,
+     * and only those whose stat data differ from the StatCache's. While
+     * an FsMonitor runs, only the files it saw change are looked at.
      */
     public static void status() {
         System.out.println("=== Branches ===");
-        Trees tree = Trees.fromFile();
-        Set<String> branchHolderSet = tree.getBranchHolder().keySet();
-        List<String> branchHolderList = new ArrayList<>(branchHolderSet);
-        Collections.sort(branchHolderList);
-        for (String branches : branchHolderList) {
-            if (branches.contains(tree.getHeadName())) {
+        String headName = Refs.headName(GITLET_DIR);
+        for (String branches : Refs.branches(GITLET_DIR).keySet()) {
+            if (branches.contains(headName)) {
                 System.out.println("*" + branches);
             } else {
                 System.out.println(branches);
@@ -356,49 +438,40 @@ public class Repository implements Serializable {
         for (String file : tempDelList) {
             System.out.println(file);
         }
-        String currentCommitID = tree.getHead();
+        String currentCommitID = Refs.head(GITLET_DIR);
         Commit currentCommit = Commit.fromFile(currentCommitID);
         HashMap<String, String> commitMap = currentCommit.getCommitMap();
-        List<String> allFiles = plainFilenamesIn(CWD);
-        Collections.sort(allFiles);
+        TreeSet<String> tracked = new TreeSet<>(commitMap.keySet());
+        tracked.addAll(additionMap.keySet());
         System.out.println("\n" + "=== Modifications Not Staged For Commit ===");
-        for (String files : allFiles) {
-            if (!(files.contains(".txt"))) {
+        for (String files : tracked) {
+            String fileSHA1code = FsMonitor.id(files);
+            if (fileSHA1code == null) {
                 continue;
             }
-            File fileLook = join(Repository.CWD, files);
-            byte[] contents = readContents(fileLook);
-            String fileSHA1code = sha1(contents);
             if (commitMap.containsKey(files) && !additionMap.containsKey(files)
                     && !deletionMap.containsKey(files)) {
-                Blobs tempBlob = Blobs.fromFile(commitMap.get(files));
-                String fileSha1 = tempBlob.getFileSHA1code();
+                String fileSha1 = commitMap.get(files);
                 if (!fileSHA1code.equals(fileSha1)) {
                     System.out.println(files + " (modified)");
                 }
             }
             if (additionMap.containsKey(files)) {
-                Blobs tempBlob = Blobs.fromFile(additionMap.get(files));
-                String fileSha1 = tempBlob.getFileSHA1code();
+                String fileSha1 = additionMap.get(files);
                 if (!(fileSHA1code.equals(fileSha1))) {
                     System.out.println(files + " (modified)");
                 }
             }
-            if (additionMap.containsKey(files) && !fileLook.exists()) {
-                System.out.println(files + " (deleted)");
-            }
         }
         Set<String> keySet = commitMap.keySet();
         for (String files : keySet) {
-            File fileLook = join(Repository.CWD, files);
-            if (!fileLook.exists() && !sa.getDeletionMap().containsKey(files)) {
+            if (FsMonitor.id(files) == null && !sa.getDeletionMap().containsKey(files)) {
                 System.out.println(files + " (deleted)");
             }
         }
         System.out.println("\n" + "=== Untracked Files ===");
-        for (String files : allFiles) {
-            if (!(additionMap.containsKey(files)) && !(commitMap.containsKey(files))
-                    && files.contains(".txt")) {
+        for (String files : FsMonitor.files()) {
+            if (!(additionMap.containsKey(files)) && !(commitMap.containsKey(files))) {
                 System.out.println(files);
             }
         }
@@ -411,17 +484,15 @@ public class Repository implements Serializable {
      * the file is not staged.
      */
     public static void checkout1(String filename) {
-        Trees tree = Trees.fromFile();
-        String currentCommitID = tree.getHead();
+        filename = Tree.normalize(filename);
+        String currentCommitID = Refs.head(GITLET_DIR);
         Commit currentCommit = Commit.fromFile(currentCommitID);
         HashMap<String, String> commitMap = currentCommit.getCommitMap();
         if (!commitMap.containsKey(filename)) {
             System.out.println("File does not exist in that commit.");
             return;
         }
-        String blobSHA1code = commitMap.get(filename);
-        Blobs currentBlob = Blobs.fromFile(blobSHA1code);
-        currentBlob.checkoutRewrite(filename);
+        Blobs.checkoutRewrite(commitMap.get(filename), filename);
     }
 
     /**
@@ -431,11 +502,9 @@ public class Repository implements Serializable {
      * file is not staged.
      */
     public static void checkout2(String commitID, String filename) {
-        Trees tree = Trees.fromFile();
+        filename = Tree.normalize(filename);
         String realID = abbreviated(commitID);
-        HashMap<String, Commit> allCommits = tree.getAllCommitsMap();
-        if (!allCommits.containsKey(realID) || realID.equals("false")) {
-            System.out.println("No commit with that id exists.");
+        if (realID == null) {
             return;
         }
         Commit currentCommit = Commit.fromFile(realID);
@@ -444,9 +513,7 @@ public class Repository implements Serializable {
             System.out.println("File does not exist in that commit.");
             return;
         }
-        String blobSHA1code = commitMap.get(filename);
-        Blobs currentBlob = Blobs.fromFile(blobSHA1code);
-        currentBlob.checkoutRewrite(filename);
+        Blobs.checkoutRewrite(commitMap.get(filename), filename);
     }
 
     /**
@@ -459,48 +526,28 @@ public class Repository implements Serializable {
      * cleared, unless the checked-out branch is the current branch.
      */
     public static void checkout3(String branchName) {
-        Trees tree = Trees.fromFile();
-        if (!(tree.getBranchHolder().containsKey(branchName))) {
+        String commitSha1 = Refs.branch(GITLET_DIR, branchName);
+        if (commitSha1 == null) {
             System.out.println("No such branch exists.");
             return;
         }
 
-        if (branchName.equals(tree.getHeadName())) {
+        if (branchName.equals(Refs.headName(GITLET_DIR))) {
             System.out.println("No need to checkout the current branch.");
             return;
         }
-        List<String> allFiles = plainFilenamesIn(CWD);
-        Commit headCommit = Commit.fromFile(tree.getHead());
+        Commit headCommit = Commit.fromFile(Refs.head(GITLET_DIR));
         HashMap<String, String> headCommitMap = headCommit.getCommitMap();
-        String commitSha1 = tree.getBranchHolder().get(branchName);
-        tree.setHead(commitSha1);
-        tree.setHeadName(branchName);
         Commit currentCommit = Commit.fromFile(commitSha1);
         HashMap<String, String> commitMap = currentCommit.getCommitMap();
-        for (String files : allFiles) {
-            if (!(headCommitMap.containsKey(files)) && files.contains(".txt")
-                    && commitMap.containsKey(files)) {
-                System.out.println("There is an untracked file in the way; delete it,"
-                        + " or add and commit it first.");
-                return;
-            }
-        }
-        for (String files : headCommitMap.keySet()) {
-            if (!commitMap.containsKey(files) && files.contains(".txt")) {
-                remove(files);
-            }
-        }
-        for (String filename : commitMap.keySet()) {
-            if (filename.contains(".txt")) {
-                String blobSHA1code = commitMap.get(filename);
-                Blobs currentBlob = Blobs.fromFile(blobSHA1code);
-                currentBlob.checkoutRewrite(filename);
-            }
+        if (untrackedInTheWay(headCommitMap, commitMap)) {
+            return;
         }
+        checkoutCommit(headCommit, currentCommit);
         StagingArea sa = StagingArea.fromFile();
         sa.clear();
         sa.saveStagingArea();
-        tree.saveTree();
+        Refs.setHeadName(GITLET_DIR, branchName);
     }
 
     /**
@@ -512,13 +559,11 @@ public class Repository implements Serializable {
      * called master.
      */
     public static void branch(String branchName) {
-        Trees tree = Trees.fromFile();
-        if (tree.getBranchHolder().containsKey(branchName)) {
+        if (Refs.hasBranch(GITLET_DIR, branchName)) {
             System.out.println("A branch with that name already exists.");
             return;
         }
-        tree.getBranchHolder().put(branchName, tree.getHead());
-        tree.saveTree();
+        Refs.setBranch(GITLET_DIR, branchName, Refs.head(GITLET_DIR));
     }
 
     /**
@@ -527,17 +572,15 @@ public class Repository implements Serializable {
      * that were created under the branch, or anything like that.
      */
     public static void removeBranch(String branchName) {
-        Trees tree = Trees.fromFile();
-        if (!(tree.getBranchHolder().containsKey(branchName))) {
+        if (!(Refs.hasBranch(GITLET_DIR, branchName))) {
             System.out.println("A branch with that name does not exist.");
             return;
         }
-        if ((branchName).equals(tree.getHeadName())) {
+        if ((branchName).equals(Refs.headName(GITLET_DIR))) {
             System.out.println("Cannot remove the current branch.");
             return;
         }
-        tree.getBranchHolder().remove(branchName);
-        tree.saveTree();
+        Refs.deleteBranch(GITLET_DIR, branchName);
     }
 
     /**
@@ -550,72 +593,102 @@ public class Repository implements Serializable {
      */
     public static void reset(String commitID) {
         String realID = abbreviated(commitID);
-        if (realID.contains("false")) {
-            System.out.println("No commit with that id exists.");
+        if (realID == null) {
             return;
         }
         Commit currentCommit = Commit.fromFile(realID);
         HashMap<String, String> currentCommitMap = currentCommit.getCommitMap();
-        List<String> allFiles = plainFilenamesIn(CWD);
-        Collections.sort(allFiles);
-        Trees tree = Trees.fromFile();
-        Commit headCommit = Commit.fromFile(tree.getHead());
+        Commit headCommit = Commit.fromFile(Refs.head(GITLET_DIR));
         HashMap<String, String> headCommitMap = headCommit.getCommitMap();
-        for (String files : allFiles) {
-            if (!(headCommitMap.containsKey(files)) && files.contains(".txt")
-                    && currentCommitMap.containsKey(files)) {
-                System.out.println("There is an untracked file in the way; delete it,"
-                        + " or add and commit it first.");
-                return;
+        if (untrackedInTheWay(headCommitMap, currentCommitMap)) {
+            return;
+        }
+        checkoutCommit(headCommit, currentCommit);
+        Refs.setHead(GITLET_DIR, realID);
+        StagingArea sa = StagingArea.fromFile();
+        sa.clear();
+        sa.saveStagingArea();
+    }
+
+    /**
+     * Replaces the working files of HEADCOMMIT with those of TARGET. Only
+     * those HEADCOMMIT alone tracks are deleted, first, so a directory may
+     * take the place of a file, and only the files whose contents differ
+     * between the two commits are written. A file the two share is
+     * rewritten only if its working copy no longer matches, so the working
+     * directory ends as if every file had been written.
+     */
+    private static void checkoutCommit(Commit headCommit, Commit target) {
+        HashMap<String, String> targetMap = target.getCommitMap();
+        Set<String> changed = target.changedFrom(headCommit);
+        for (String filename : changed) {
+            if (!targetMap.containsKey(filename)) {
+                deleteWorkingFile(filename);
             }
         }
-        for (String files : currentCommitMap.keySet()) {
-            checkout2(realID, files);
+        HashMap<String, String> writes = new HashMap<>();
+        for (Map.Entry<String, String> file : targetMap.entrySet()) {
+            String filename = file.getKey();
+            if (changed.contains(filename)
+                    || !file.getValue().equals(FsMonitor.id(filename))) {
+                writes.put(filename, file.getValue());
+            }
         }
-        for (String files : allFiles) {
-            if (files.contains(".txt")) {
-                if (!(currentCommitMap.containsKey(files))
-                        && (headCommitMap.containsKey(files))) {
-                    remove(files);
-                }
+        Blobs.checkoutRewrite(writes);
+    }
+
+    /**
+     * Returns true, after saying so, if a file in the working directory that
+     * HEADMAP does not track would be overwritten by one TARGETMAP tracks.
+     * Ignored files are not looked at.
+     */
+    private static boolean untrackedInTheWay(Map<String, String> headMap,
+                                             Map<String, String> targetMap) {
+        for (String file : FsMonitor.files()) {
+            if (!headMap.containsKey(file) && targetMap.containsKey(file)) {
+                System.out.println("There is an untracked file in the way; delete it,"
+                        + " or add and commit it first.");
+                return true;
             }
         }
-        tree.setHead(realID);
-        tree.getBranchHolder().put(tree.getHeadName(), tree.getHead());
-        tree.saveTree();
-        StagingArea sa = StagingArea.fromFile();
-        sa.clear();
-        sa.saveStagingArea();
+        return false;
     }
 
     /**
-     * Helper function that finds commit ID based on abbreviations.
+     * Helper function that finds the commit ID whose id starts with the
+     * abbreviation COMMITID. If there is none, or several, says so and
+     * returns null; up to AMBIGUOUS_SHOWN of several are listed.
      */
     private static String abbreviated(String commitID) {
-        Trees tree = Trees.fromFile();
-        for (String commits : tree.getAllCommitsMap().keySet()) {
-            if (commits.contains(commitID)) {
-                return commits;
+        List<String> matches = CommitIndex.resolve(OBJECT_DIR, commitID, AMBIGUOUS_SHOWN + 1);
+        if (matches.isEmpty()) {
+            System.out.println("No commit with that id exists.");
+            return null;
+        }
+        if (matches.size() > 1) {
+            System.out.println("Commit id " + commitID + " is ambiguous. It may be:");
+            for (String match : matches.subList(0, Math.min(AMBIGUOUS_SHOWN, matches.size()))) {
+                System.out.println(match);
             }
+            return null;
         }
-        return "false";
+        return matches.get(0);
     }
 
     /**
      * Checks merge conditions.
      */
     private static boolean mergeConditions(String branchName) {
-        Trees tree = Trees.fromFile();
         StagingArea sa = StagingArea.fromFile();
         if (!sa.getAdditionMap().isEmpty() || !sa.getDeletionMap().isEmpty()) {
             System.out.println("You have uncommitted changes.");
             return true;
         }
-        if (!tree.getBranchHolder().containsKey(branchName)) {
+        if (!Refs.hasBranch(GITLET_DIR, branchName)) {
             System.out.println("A branch with that name does not exist.");
             return true;
         }
-        if (tree.getHeadName().equals(branchName)) {
+        if (Refs.headName(GITLET_DIR).equals(branchName)) {
             System.out.println("Cannot merge a branch with itself.");
             return true;
         }
@@ -626,20 +699,13 @@ public class Repository implements Serializable {
      * Checks merge conditions.
      */
     private static boolean mergeConditions2(String branchName) {
-        Trees tree = Trees.fromFile();
-        Commit givenBranch = Commit.fromFile(tree.getBranchHolder().get(branchName));
-        Commit currentBranch = Commit.fromFile(tree.getBranchHolder().get(tree.getHeadName()));
+        Commit givenBranch = Commit.fromFile(Refs.branch(GITLET_DIR, branchName));
+        Commit currentBranch = Commit.fromFile(Refs.head(GITLET_DIR));
         Commit splitPoint = getSplitPoint(givenBranch, currentBranch);
         HashMap<String, String> givenBranchMap = givenBranch.getCommitMap();
         HashMap<String, String> currentBranchMap = currentBranch.getCommitMap();
-        List<String> allFiles = plainFilenamesIn(CWD);
-        for (String files : allFiles) {
-            if (!(currentBranchMap.containsKey(files)) && files.contains(".txt")
-                    && givenBranchMap.containsKey(files)) {
-                System.out.println("There is an untracked file in the way; "
-                        + "delete it, or add and commit it first.");
-                return true;
-            }
+        if (untrackedInTheWay(currentBranchMap, givenBranchMap)) {
+            return true;
         }
         if (splitPoint.getSha1code().equals(givenBranch.getSha1code())) {
             System.out.println("Given branch is an ancestor of the current branch.");
@@ -654,16 +720,18 @@ public class Repository implements Serializable {
     }
 
     /**
-     * Merges files from the given branch into the current branch.
+     * Merges files from the given branch into the current branch. Only the
+     * files the given branch changed since the split point can need
+     * anything, so only those are looked at, and directories it left
+     * alone are not read.
      */
     public static void merge(String branchName) {
-        Trees tree = Trees.fromFile();
         StagingArea sa = StagingArea.fromFile();
         if (mergeConditions(branchName)) {
             return;
         }
-        Commit givenBranch = Commit.fromFile(tree.getBranchHolder().get(branchName));
-        Commit currentBranch = Commit.fromFile(tree.getBranchHolder().get(tree.getHeadName()));
+        Commit givenBranch = Commit.fromFile(Refs.branch(GITLET_DIR, branchName));
+        Commit currentBranch = Commit.fromFile(Refs.head(GITLET_DIR));
         Commit splitPoint = getSplitPoint(givenBranch, currentBranch);
         HashMap<String, String> givenBranchMap = givenBranch.getCommitMap();
         HashMap<String, String> currentBranchMap = currentBranch.getCommitMap();
@@ -672,7 +740,10 @@ public class Repository implements Serializable {
             return;
         }
         boolean conflict = false;
-        for (String files : givenBranchMap.keySet()) {
+        for (String files : givenBranch.changedFrom(splitPoint)) {
+            if (!givenBranchMap.containsKey(files)) {
+                continue;
+            }
             String givenCommitSha1 = givenBranchMap.get(files);
             String currentCommitSha1 = currentBranchMap.get(files);
             String splitCommitSha1 = splitPointMap.get(files);
@@ -716,23 +787,26 @@ public class Repository implements Serializable {
         }
         StagingArea saNew = StagingArea.fromFile();
         saNew.saveStagingArea();
-        mergeCommit("Merged " + branchName + " into " + tree.getHeadName() + ".", branchName);
+        mergeCommit("Merged " + branchName + " into " + Refs.headName(GITLET_DIR) + ".",
+                branchName);
     }
 
     /**
      * Merge conditions part2.
      */
     public static boolean mergeLittle(String branchName) {
-        Trees tree = Trees.fromFile();
         StagingArea sa = StagingArea.fromFile();
-        Commit givenBranch = Commit.fromFile(tree.getBranchHolder().get(branchName));
-        Commit currentBranch = Commit.fromFile(tree.getBranchHolder().get(tree.getHeadName()));
+        Commit givenBranch = Commit.fromFile(Refs.branch(GITLET_DIR, branchName));
+        Commit currentBranch = Commit.fromFile(Refs.head(GITLET_DIR));
         Commit splitPoint = getSplitPoint(givenBranch, currentBranch);
         HashMap<String, String> givenBranchMap = givenBranch.getCommitMap();
         HashMap<String, String> currentBranchMap = currentBranch.getCommitMap();
         HashMap<String, String> splitPointMap = splitPoint.getCommitMap();
         boolean conflict = false;
-        for (String files : splitPointMap.keySet()) {
+        for (String files : givenBranch.changedFrom(splitPoint)) {
+            if (!splitPointMap.containsKey(files)) {
+                continue;
+            }
             String givenCommitSha1 = givenBranchMap.get(files);
             String currentCommitSha1 = currentBranchMap.get(files);
             String splitCommitSha1 = splitPointMap.get(files);
@@ -782,14 +856,12 @@ public class Repository implements Serializable {
      * Finds split point.
      */
     private static Commit getSplitPoint(Commit commit1, Commit commit2) {
-        ArrayList<String> bfsCommit1 = BFS.bfs(commit1.getCommitSHA1code());
-        ArrayList<String> bfsCommit2 = BFS.bfs(commit2.getCommitSHA1code());
-        for (String commits : bfsCommit2) {
-            if (bfsCommit1.contains(commits)) {
-                return Commit.fromFile(commits);
-            }
+        String splitPoint = MergeBase.base(OBJECT_DIR, commit1.getCommitSHA1code(),
+                commit2.getCommitSHA1code());
+        if (splitPoint == null) {
+            return null;
         }
-        return null;
+        return Commit.fromFile(splitPoint);
     }
 
     /**
@@ -801,38 +873,28 @@ public class Repository implements Serializable {
         String blob1Sha1code = commit1.getCommitMap().get(filename);
         String blob2Sha1code = commit2.getCommitMap().get(filename);
         if (blob1Sha1code != null) {
-            Blobs blob1 = Blobs.fromFile(blob1Sha1code);
-            String file1Sha1 = blob1.getFileSHA1code();
-            File contents1 = Utils.join(Blobs.getFileDir(), file1Sha1);
-            readContents1 = readContentsAsString(contents1);
+            readContents1 = new String(Blobs.readFileContents(blob1Sha1code),
+                    StandardCharsets.UTF_8);
         } else {
             readContents1 = "";
         }
         if (blob2Sha1code != null) {
-            Blobs blob2 = Blobs.fromFile(blob2Sha1code);
-            String file2Sha1 = blob2.getFileSHA1code();
-            File contents2 = Utils.join(Blobs.getFileDir(), file2Sha1);
-            readContents2 = readContentsAsString(contents2);
-
+            readContents2 = new String(Blobs.readFileContents(blob2Sha1code),
+                    StandardCharsets.UTF_8);
         } else {
             readContents2 = "";
         }
         File tempFile = join(CWD, filename);
-        if (!tempFile.exists()) {
-            try {
-                tempFile.createNewFile();
-            } catch (IOException e) {
-                System.err.println(e);
-            }
-        }
+        /* Unlink first: the file may be a hard link to its stored contents. */
+        tempFile.delete();
+        tempFile.getParentFile().mkdirs();
         Utils.writeContents(tempFile, "<<<<<<< HEAD\n" + readContents2
                 + "=======\n" + readContents1 + ">>>>>>>\n");
         StagingArea sa = StagingArea.fromFile();
         Blobs newBlob = new Blobs(filename);
-        newBlob.saveBlob();
-        sa.getAdditionMap().put(filename, newBlob.getBlobSHA1code());
+        sa.getAdditionMap().put(filename, newBlob.getFileSHA1code());
         sa.saveStagingArea();
-        return newBlob.getBlobSHA1code();
+        return newBlob.getFileSHA1code();
     }
 
     public static void addRemote(String remoteName, String remotePath) {
@@ -873,105 +935,79 @@ public class Repository implements Serializable {
             System.out.println("Remote directory not found.");
             return;
         }
+        if (!Migration.isCurrent(directory)) {
+            System.out.println("Please run migrate in the remote repository.");
+            return;
+        }
         if (!inHistory(remoteName, remoteBranchName)) {
             System.out.println("Please pull down remote changes before pushing.");
             return;
         }
-        Trees tree = Trees.fromFile();
-        Commit currentCommit = Commit.fromFile(tree.getHead());
+        Commit currentCommit = Commit.fromFile(Refs.head(GITLET_DIR));
         File remoteRepository = new File(remote.getRemoteMap().get(remoteName));
         File remoteObjects = join(remoteRepository, ".objects");
-        Trees remoteTree = Utils.readObject(join(remoteObjects, "tree"), Trees.class);
-        String remoteCommitID = remoteTree.getBranchHolder().get(remoteBranchName);
-        File remoteCommits = join(remoteObjects, ".commits");
-        Commit remoteCommit = Utils.readObject(join(remoteCommits, remoteCommitID), Commit.class);
-        remoteTree.setHead(currentCommit.getCommitSHA1code());
-        remoteTree.saveRemoteTree(join(remoteObjects, "tree"));
-        while (!currentCommit.getSha1code().equals(remoteCommit.getSha1code())) {
-            pushCommits(currentCommit.getCommitSHA1code(), remoteName);
-            for (String filename : currentCommit.getCommitMap().keySet()) {
-                String blobs = currentCommit.getCommitMap().get(filename);
-                pushBlobs(blobs, remoteName);
-                Blobs newBlobs = Utils.readObject(join(BLOB_DIR, blobs), Blobs.class);
-                pushContents(newBlobs.getFileSHA1code(), remoteName);
+        String remoteCommitID = Refs.branch(remoteRepository, remoteBranchName);
+        Commit remoteCommit = Commit.fromFile(remoteObjects, remoteCommitID);
+        String pushedID = currentCommit.getCommitSHA1code();
+        List<String> missing = ReachabilityBitmaps.missing(OBJECT_DIR, pushedID, remoteCommitID);
+        if (missing != null) {
+            for (String commitID : missing) {
+                copyFiles(Commit.fromFile(commitID), OBJECT_DIR, remoteObjects);
+                pushCommits(commitID, remoteName);
             }
-            currentCommit = Utils.readObject(join(COMMIT_DIR,
-                    currentCommit.getParent()), Commit.class);
         }
-    }
-
-    public static void pushCommits(String filename, String remoteName) {
-        Remote remote = Remote.fromFile();
-        File remoteRepository = new File(remote.getRemoteMap().get(remoteName));
-        File remoteObjects = join(remoteRepository, ".objects");
-        File remoteCommits = join(remoteObjects, ".commits");
-        Commit commit = Commit.fromFile(filename);
-        File addCommit = join(remoteCommits, filename);
-        if (!addCommit.exists()) {
-            try {
-                addCommit.createNewFile();
-            } catch (IOException e) {
-                System.err.println(e);
-            }
+        while (missing == null
+                && !currentCommit.getSha1code().equals(remoteCommit.getSha1code())) {
+            copyFiles(currentCommit, OBJECT_DIR, remoteObjects);
+            pushCommits(currentCommit.getCommitSHA1code(), remoteName);
+            currentCommit = Commit.fromFile(currentCommit.getParent());
         }
-        Utils.writeObject(addCommit, commit);
-        Trees remoteTree = Utils.readObject(join(remoteObjects, "tree"), Trees.class);
-        remoteTree.getAllCommitsMap().put(filename, commit);
-        remoteTree.saveRemoteTree(join(remoteObjects, "tree"));
+        CommitGraph.add(remoteObjects, pushedID);
+        Refs.setBranch(remoteRepository, remoteBranchName, pushedID);
     }
 
-    public static void pushBlobs(String filename, String remoteName) {
-        Remote remote = Remote.fromFile();
-        File remoteRepository = new File(remote.getRemoteMap().get(remoteName));
-        File remoteObjects = join(remoteRepository, ".objects");
-        File remoteBlobs = join(remoteObjects, ".blobs");
-        Blobs blobs = Blobs.fromFile(filename);
-        File addBlob = join(remoteBlobs, filename);
-        if (!addBlob.exists()) {
-            try {
-                addBlob.createNewFile();
-            } catch (IOException e) {
-                System.err.println(e);
-            }
+    /**
+     * Copies the trees and file contents of COMMIT from FROMDIR to TODIR.
+     * Subtrees TODIR already has are skipped whole.
+     */
+    private static void copyFiles(Commit commit, File fromDir, File toDir) {
+        if (commit.getTree() != null) {
+            Tree.copy(fromDir, toDir, commit.getTree());
+            return;
+        }
+        for (String contents : commit.getCommitMap().values()) {
+            ObjectStore.copy(fromDir, toDir, ObjectStore.CONTENTS, contents);
         }
-        Utils.writeObject(addBlob, blobs);
     }
 
-    public static void pushContents(String filename, String remoteName) {
+    public static void pushCommits(String filename, String remoteName) {
         Remote remote = Remote.fromFile();
         File remoteRepository = new File(remote.getRemoteMap().get(remoteName));
         File remoteObjects = join(remoteRepository, ".objects");
-        File remoteContents = join(remoteObjects, ".fileContents");
-        File addContents = join(remoteContents, filename);
-        File contents = join(Blobs.getFileDir(), filename);
-        if (!addContents.exists()) {
-            try {
-                addContents.createNewFile();
-            } catch (IOException e) {
-                System.err.println(e);
-            }
-        }
-        Utils.writeContents(addContents, readContentsAsString(contents));
+        ObjectStore.copy(OBJECT_DIR, remoteObjects, ObjectStore.COMMIT, filename);
     }
 
     private static boolean inHistory(String remoteName, String remoteBranchName) {
         Remote remote = Remote.fromFile();
-        Trees tree = Trees.fromFile();
-        String commitID = tree.getHead();
+        String commitID = Refs.head(GITLET_DIR);
         Commit myCommit = Commit.fromFile(commitID);
         File remoteRepository = new File(remote.getRemoteMap().get(remoteName));
         File remoteObjects = join(remoteRepository, ".objects");
-        Trees remoteTree = Utils.readObject(join(remoteObjects, "tree"), Trees.class);
-        String remoteCommitID = remoteTree.getBranchHolder().get(remoteBranchName);
-        File remoteCommits = join(remoteObjects, ".commits");
-        Commit remoteCommit = Utils.readObject(join(remoteCommits, remoteCommitID), Commit.class);
-        ArrayList<String> bfsCommit1 = BFS.bfs(myCommit.getCommitSHA1code());
-        if (bfsCommit1.contains(remoteCommit.getCommitSHA1code())) {
-            return true;
+        String remoteCommitID = Refs.branch(remoteRepository, remoteBranchName);
+        if (!ObjectStore.contains(OBJECT_DIR, ObjectStore.COMMIT, remoteCommitID)) {
+            return false;
         }
-        return false;
+        return MergeBase.isAncestor(OBJECT_DIR, remoteCommitID, myCommit.getCommitSHA1code());
     }
 
+    /**
+     * Copies the commits of the branch REMOTEBRANCHNAME of the remote
+     * REMOTENAME that this repository lacks, with both parents followed,
+     * into a branch named REMOTENAME/REMOTEBRANCHNAME. The walk stops at
+     * commits already here, so a repeated fetch costs only the new commits.
+     * Each commit is copied after its parents, so one that is here always
+     * has its whole history here too, even after an interrupted fetch.
+     */
     public static void fetch(String remoteName, String remoteBranchName) {
         Remote remote = Remote.fromFile();
         File remoteRepository = new File(remote.getRemoteMap().get(remoteName));
@@ -979,86 +1015,40 @@ public class Repository implements Serializable {
         if (fetchFailure(remoteName, remoteBranchName)) {
             return;
         }
-        File remoteCommits = join(remoteObjects, ".commits");
-        Trees remoteTree = Utils.readObject(join(remoteObjects, "tree"), Trees.class);
-        String remCurrCommitSha1 = remoteTree.getBranchHolder().get(remoteBranchName);
-        Trees tree = Trees.fromFile();
-        tree.getBranchHolder().put(remoteName + "/" + remoteBranchName,
-                remCurrCommitSha1);
-        tree.saveTree();
-        Commit remCurrCommit = Utils.readObject(join(remoteCommits,
-                remCurrCommitSha1), Commit.class);
-        File remoteBlobs = join(remoteObjects, ".blobs");
-        while (remCurrCommit != null) {
-            fetchCommits(remCurrCommit.getCommitSHA1code(), remoteName);
-            for (String filename : remCurrCommit.getCommitMap().keySet()) {
-                String blobs = remCurrCommit.getCommitMap().get(filename);
-                fetchBlobs(blobs, remoteName);
-                Blobs newBlobs = Utils.readObject(join(remoteBlobs, blobs), Blobs.class);
-                fetchContents(newBlobs.getFileSHA1code(), remoteName);
-            }
-            if (remCurrCommit.getParent() != null) {
-                remCurrCommit = Utils.readObject(join(remoteCommits,
-                        remCurrCommit.getParent()), Commit.class);
-            } else {
-                remCurrCommit = null;
+        String remCurrCommitSha1 = Refs.branch(remoteRepository, remoteBranchName);
+        Deque<String> pending = new ArrayDeque<>();
+        pending.push(remCurrCommitSha1);
+        while (!pending.isEmpty()) {
+            String commitID = pending.peek();
+            if (ObjectStore.contains(OBJECT_DIR, ObjectStore.COMMIT, commitID)) {
+                pending.pop();
+                continue;
             }
-        }
-    }
-
-    public static void fetchCommits(String filename, String remoteName) {
-        Remote remote = Remote.fromFile();
-        File remoteRepository = new File(remote.getRemoteMap().get(remoteName));
-        File remoteObjects = join(remoteRepository, ".objects");
-        File remoteCommits = join(remoteObjects, ".commits");
-        Commit newCommit = Utils.readObject(join(remoteCommits, filename), Commit.class);
-        File addCommit = join(COMMIT_DIR, filename);
-        if (!addCommit.exists()) {
-            try {
-                addCommit.createNewFile();
-            } catch (IOException e) {
-                System.err.println(e);
+            Commit commit = Commit.fromFile(remoteObjects, commitID);
+            String parent = commit.getParent();
+            String parent2 = commit.getParent2();
+            if (parent != null && !ObjectStore.contains(OBJECT_DIR, ObjectStore.COMMIT, parent)) {
+                pending.push(parent);
+                continue;
             }
-        }
-        Utils.writeObject(addCommit, newCommit);
-        Trees tree = Trees.fromFile();
-        tree.getAllCommitsMap().put(filename, newCommit);
-        tree.saveTree();
-    }
-
-    public static void fetchBlobs(String filename, String remoteName) {
-        Remote remote = Remote.fromFile();
-        File remoteRepository = new File(remote.getRemoteMap().get(remoteName));
-        File remoteObjects = join(remoteRepository, ".objects");
-        File remoteBlobs = join(remoteObjects, ".blobs");
-        Blobs newBlobs = Utils.readObject(join(remoteBlobs, filename), Blobs.class);
-        File addBlob = join(BLOB_DIR, filename);
-        if (!addBlob.exists()) {
-            try {
-                addBlob.createNewFile();
-            } catch (IOException e) {
-                System.err.println(e);
+            if (parent2 != null
+                    && !ObjectStore.contains(OBJECT_DIR, ObjectStore.COMMIT, parent2)) {
+                pending.push(parent2);
+                continue;
             }
+            copyFiles(commit, remoteObjects, OBJECT_DIR);
+            ObjectStore.copy(remoteObjects, OBJECT_DIR, ObjectStore.COMMIT, commitID);
+            pending.pop();
         }
-        Utils.writeObject(addBlob, newBlobs);
+        CommitGraph.add(OBJECT_DIR, remCurrCommitSha1);
+        Refs.setBranch(GITLET_DIR, remoteName + "/" + remoteBranchName, remCurrCommitSha1);
     }
 
-    public static void fetchContents(String filename, String remoteName) {
+    public static void fetchCommits(String filename, String remoteName) {
         Remote remote = Remote.fromFile();
         File remoteRepository = new File(remote.getRemoteMap().get(remoteName));
         File remoteObjects = join(remoteRepository, ".objects");
-        File remoteContents = join(remoteObjects, ".fileContents");
-        File newContents = join(remoteContents, filename);
-        File addContents = join(join(Repository.OBJECT_DIR, ".fileContents"),
-                filename);
-        if (!addContents.exists()) {
-            try {
-                addContents.createNewFile();
-            } catch (IOException e) {
-                System.err.println(e);
-            }
-        }
-        Utils.writeContents(addContents, readContents(newContents));
+        ObjectStore.copy(remoteObjects, OBJECT_DIR, ObjectStore.COMMIT, filename);
     }
 
     public static boolean fetchFailure(String remoteName, String remoteBranchName) {
@@ -1068,16 +1058,111 @@ public class Repository implements Serializable {
             System.out.println("Remote directory not found.");
             return true;
         }
+        if (!Migration.isCurrent(directory)) {
+            System.out.println("Please run migrate in the remote repository.");
+            return true;
+        }
         File remoteRepository = new File(remote.getRemoteMap().get(remoteName));
-        File remoteObjects = join(remoteRepository, ".objects");
-        Trees remoteTree = Utils.readObject(join(remoteObjects, "tree"), Trees.class);
-        if (!remoteTree.getBranchHolder().containsKey(remoteBranchName)) {
+        if (!Refs.hasBranch(remoteRepository, remoteBranchName)) {
             System.out.println("That remote does not have that branch.");
             return true;
         }
         return false;
     }
 
+    /**
+     * Moves all loose objects into a new pack so that later reads are
+     * sequential reads of one file rather than one open per object. If ALL,
+     * the existing packs are merged into the new one as well, which gives
+     * delta compression every version of a file to choose bases from. Any
+     * commits missing from the commit-graph are added to it too, with their
+     * changed-paths filters, the commit index is rewritten, and the ancestors
+     * of each branch are stored as a reachability bitmap. If ALL, the
+     * message indexes are rebuilt as well.
+     */
+    public static void repack(boolean all) {
+        Pack.repack(OBJECT_DIR, all);
+        CommitGraph.addAll(OBJECT_DIR);
+        ChangedPaths.addAll(OBJECT_DIR);
+        CommitIndex.write(OBJECT_DIR);
+        if (all) {
+            MessageIndex.rebuild(OBJECT_DIR);
+        }
+        ReachabilityBitmaps.write(OBJECT_DIR, Refs.branches(GITLET_DIR).values());
+    }
+
+    /**
+     * Rewrites a repository of an older format into the current one.
+     */
+    public static void migrate() {
+        Migration.migrate();
+    }
+
+    /**
+     * Moves every branch into the packed-refs file.
+     */
+    public static void packRefs() {
+        Refs.pack(GITLET_DIR);
+    }
+
+    /**
+     * Prints the value of the setting KEY, if it is set.
+     */
+    public static void config(String key) {
+        String value = Config.get(key, null);
+        if (value != null) {
+            System.out.println(value);
+        }
+    }
+
+    /**
+     * Sets the setting KEY to VALUE.
+     */
+    public static void config(String key, String value) {
+        Config.set(key, value);
+    }
+
+    /**
+     * Starts a file-system monitor of the working directory in the
+     * background, or with OPTION --stop stops it, or with --run runs it
+     * in this process.
+     */
+    public static void fsmonitor(String option) {
+        switch (option) {
+            case "--stop":
+                FsMonitor.stop();
+                break;
+            case "--run":
+                FsMonitor.run();
+                break;
+            default:
+                FsMonitor.start();
+        }
+    }
+
+    /**
+     * Prints the best common ancestor of FIRST and SECOND, each a branch
+     * name or a commit id that may be abbreviated as for checkout. If ALL,
+     * prints every best common ancestor, of which criss-cross merges leave
+     * more than one.
+     */
+    public static void mergeBase(String first, String second, boolean all) {
+        String one = Refs.hasBranch(GITLET_DIR, first) ? Refs.branch(GITLET_DIR, first)
+                : abbreviated(first);
+        if (one == null) {
+            return;
+        }
+        String two = Refs.hasBranch(GITLET_DIR, second) ? Refs.branch(GITLET_DIR, second)
+                : abbreviated(second);
+        if (two == null) {
+            return;
+        }
+        List<String> bases = MergeBase.bases(OBJECT_DIR, one, two);
+        for (String base : all ? bases : bases.subList(0, Math.min(1, bases.size()))) {
+            System.out.println(base);
+        }
+    }
+
     public static void pull(String remoteName, String remoteBranchName) {
         if (fetchFailure(remoteName, remoteBranchName)) {
             return;
@@ -0,0 +1,244 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import static gitlet.Utils.*;
+
+/** What is known of the working files, so a file whose stat data has not
+ *  changed is not read again to learn its contents id. The index file in
+ *  .gitlet holds, after a header, the time it was written and, for each
+ *  path, the modification time, size and inode the file had when it was
+ *  last hashed, checked out or added, and its contents id. A file whose
+ *  stat data still match is taken to be unchanged.
+ *
+ *  A file changed within the clock's granularity of being recorded keeps
+ *  its old modification time, so an entry whose time is within
+ *  RACY_MILLIS of the index being written is "racy": it is hashed again
+ *  each time until an index written later shows it settled. The index is
+ *  only a cache: if it is missing or damaged, every file is hashed.
+ *
+ *  @author Jeffrey Huang
+ */
+public class StatCache {
+
+    /** The index file. */
+    public static final File INDEXFILE = join(Repository.GITLET_DIR, "index");
+
+    /** Magic number at the start of the file. */
+    private static final int MAGIC = 0x47535443;
+
+    /** Version of the format. */
+    private static final int VERSION = 1;
+
+    /** How close to the index's writing, in milliseconds, a file may have
+     *  been modified and still be suspected of a change its modification
+     *  time does not show. Covers file systems with two-second times. */
+    private static final long RACY_MILLIS = 2000;
+
+    /** The index of the current repository, read on first use. */
+    private static StatCache loaded;
+
+    /** The stat data and contents id of each path. */
+    private final TreeMap<String, Entry> entries = new TreeMap<>();
+
+    /** Milliseconds since the epoch when the index was written. */
+    private long written;
+
+    /** True if entries differ from the file. */
+    private boolean changed;
+
+    /** The stat data of a file when its contents id was learned. */
+    private static class Entry {
+        /** Modification time in nanoseconds since the epoch. */
+        private long mtime;
+        /** Size in bytes. */
+        private long size;
+        /** A hash of the file system's key for the file, such as its
+         *  device and inode, or 0 if it has none. */
+        private long inode;
+        /** Contents id. */
+        private String id;
+    }
+
+    /** Returns the contents id of the working file PATH, or null if there
+     *  is no such file. It is read and hashed only if its stat data differ
+     *  from those recorded, or the entry is racy. */
+    public static String id(String path) {
+        File file = join(Repository.CWD, path);
+        Entry now = stat(file);
+        if (now == null) {
+            return null;
+        }
+        StatCache index = load();
+        Entry known = index.entries.get(path);
+        if (known != null && known.mtime == now.mtime && known.size == now.size
+                && known.inode == now.inode && !index.racy(known)) {
+            return known.id;
+        }
+        now.id = hash(file);
+        index.entries.put(path, now);
+        index.changed = true;
+        return now.id;
+    }
+
+    /** Returns the contents id recorded for the working file PATH if its
+     *  stat data still match and the entry is not racy, or else null. The
+     *  file is not read. */
+    public static String knownId(String path) {
+        Entry now = stat(join(Repository.CWD, path));
+        StatCache index = load();
+        Entry known = index.entries.get(path);
+        if (now == null || known == null || known.mtime != now.mtime
+                || known.size != now.size || known.inode != now.inode || index.racy(known)) {
+            return null;
+        }
+        return known.id;
+    }
+
+    /** Returns the contents id last recorded for the working file PATH,
+     *  or null if there is none. Neither the file nor its stat data are
+     *  looked at, so the caller must know by other means, such as the
+     *  FsMonitor, that it has not changed since. */
+    public static String recordedId(String path) {
+        Entry known = load().entries.get(path);
+        return known == null ? null : known.id;
+    }
+
+    /** Records that the working file PATH has the contents ID, as just
+     *  written or read. */
+    public static void record(String path, String id) {
+        Entry now = stat(join(Repository.CWD, path));
+        if (now == null) {
+            forget(path);
+            return;
+        }
+        now.id = id;
+        StatCache index = load();
+        index.entries.put(path, now);
+        index.changed = true;
+    }
+
+    /** Drops what is known of the working file PATH. */
+    public static void forget(String path) {
+        StatCache index = load();
+        if (index.entries.remove(path) != null) {
+            index.changed = true;
+        }
+    }
+
+    /** Writes the index if anything was learned since it was read. */
+    public static void save() {
+        if (loaded == null || !loaded.changed || !Repository.GITLET_DIR.isDirectory()) {
+            return;
+        }
+        loaded.written = System.currentTimeMillis();
+        File temp = join(Repository.GITLET_DIR, "index.tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(loaded.written);
+            out.writeInt(loaded.entries.size());
+            for (Map.Entry<String, Entry> entry : loaded.entries.entrySet()) {
+                Entry e = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeLong(e.mtime);
+                out.writeLong(e.size);
+                out.writeLong(e.inode);
+                out.write(ObjectStore.toBytes(e.id));
+            }
+        } catch (IOException e) {
+            throw error("Cannot write %s: %s", INDEXFILE, e.getMessage());
+        }
+        ObjectStore.replace(temp, INDEXFILE);
+        loaded.changed = false;
+    }
+
+    /** Returns true if ENTRY was recorded too close to the writing of the
+     *  index to be trusted. */
+    private boolean racy(Entry entry) {
+        return TimeUnit.NANOSECONDS.toMillis(entry.mtime) >= written - RACY_MILLIS;
+    }
+
+    /** Returns the index of the current repository, reading it first if
+     *  need be. */
+    private static StatCache load() {
+        if (loaded != null) {
+            return loaded;
+        }
+        loaded = new StatCache();
+        if (!INDEXFILE.isFile()) {
+            return loaded;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(readContents(INDEXFILE)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return loaded;
+            }
+            long written = in.readLong();
+            int count = in.readInt();
+            byte[] id = new byte[UID_LENGTH / 2];
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                Entry entry = new Entry();
+                entry.mtime = in.readLong();
+                entry.size = in.readLong();
+                entry.inode = in.readLong();
+                in.readFully(id);
+                entry.id = ObjectStore.toHex(id, 0);
+                loaded.entries.put(path, entry);
+            }
+            loaded.written = written;
+        } catch (IOException e) {
+            loaded.entries.clear();
+        }
+        return loaded;
+    }
+
+    /** Returns the stat data of FILE, with no id, or null if it is not a
+     *  regular file. */
+    private static Entry stat(File file) {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        } catch (IOException e) {
+            return null;
+        }
+        if (!attributes.isRegularFile()) {
+            return null;
+        }
+        Entry entry = new Entry();
+        entry.mtime = attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+        entry.size = attributes.size();
+        Object key = attributes.fileKey();
+        entry.inode = key == null ? 0 : key.toString().hashCode();
+        return entry;
+    }
+
+    /** Returns the contents id of FILE, reading it a buffer at a time. */
+    private static String hash(File file) {
+        MessageDigest digest = ObjectStore.newDigest();
+        byte[] buffer = new byte[ObjectStore.BUFFER_SIZE];
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+                digest.update(buffer, 0, n);
+            }
+        } catch (IOException e) {
+            throw error("Cannot read %s: %s", file, e.getMessage());
+        }
+        return ObjectStore.toHex(digest.digest(), 0);
+    }
+}
@@ -0,0 +1,293 @@
+package gitlet;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static gitlet.Utils.*;
+
+/** A directory of the files of a commit, stored as an object of its own
+ *  under the sha1code of its encoding. It lists the files directly in it,
+ *  each with the id of its contents, and its subdirectories, each with the
+ *  id of its tree, so a tree's id stands for everything beneath it: two
+ *  directories with the same id are the same throughout and are never
+ *  compared further. A commit names its root tree. Committing rewrites
+ *  only the trees of the directories on the paths it changed; the other
+ *  subtrees are shared with the parent. Not to be confused with Trees, the
+ *  branch table of older repositories.
+ *
+ *  A tree is stored in the encoding of Codec: a version byte, the number
+ *  of files followed by each name and contents id, and the number of
+ *  subdirectories followed by each name and tree id, both in name order.
+ *  Paths of files below the root are their names joined by slashes.
+ *
+ *  @author Jeffrey Huang
+ */
+public class Tree {
+
+    /** Version of the encoding this class writes. */
+    private static final int VERSION = 1;
+
+    /** Number of trees kept after they are read. */
+    private static final int CACHE_SIZE = 1024;
+
+    /** Trees recently read, keyed by id, least recently used first. As ids
+     *  name contents, one tree serves every repository. */
+    private static final LinkedHashMap<String, Tree> READ =
+            new LinkedHashMap<>(CACHE_SIZE, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Tree> eldest) {
+                    return size() > CACHE_SIZE;
+                }
+            };
+
+    /** The files directly in this directory: name -> contents id. */
+    private final TreeMap<String, String> files = new TreeMap<>();
+
+    /** The subdirectories: name -> tree id. */
+    private final TreeMap<String, String> dirs = new TreeMap<>();
+
+    /** Returns PATH as a tracked path: relative to the working directory,
+     *  with "." and ".." resolved and single slashes between names. */
+    public static String normalize(String path) {
+        String result = new File(path).toPath().normalize().toString();
+        return result.replace(File.separatorChar, '/');
+    }
+
+    /** Stores the trees of the files FILES, path -> contents id, in
+     *  OBJECTDIR and returns the id of the root. Trees already stored are
+     *  not written again. */
+    public static String write(File objectDir, Map<String, String> files) {
+        return build(objectDir, new TreeMap<>(files));
+    }
+
+    /** Returns the id the root tree of FILES would have, writing nothing. */
+    public static String id(Map<String, String> files) {
+        return build(null, new TreeMap<>(files));
+    }
+
+    /** Returns the id of the tree of FILES, storing it and its subtrees in
+     *  OBJECTDIR unless that is null. */
+    private static String build(File objectDir, SortedMap<String, String> files) {
+        Tree tree = new Tree();
+        while (!files.isEmpty()) {
+            String path = files.firstKey();
+            int slash = path.indexOf('/');
+            if (slash < 0) {
+                tree.files.put(path, files.get(path));
+                files = files.tailMap(path + "\0");
+                continue;
+            }
+            String name = path.substring(0, slash);
+            SortedMap<String, String> inside = files.subMap(name + "/", name + "0");
+            SortedMap<String, String> relative = new TreeMap<>();
+            for (Map.Entry<String, String> entry : inside.entrySet()) {
+                relative.put(entry.getKey().substring(slash + 1), entry.getValue());
+            }
+            tree.dirs.put(name, build(objectDir, relative));
+            files = files.tailMap(name + "0");
+        }
+        return tree.save(objectDir);
+    }
+
+    /** Returns the id of the root tree that results from applying CHANGES,
+     *  path -> contents id or null to remove the file, to the tree ROOT of
+     *  OBJECTDIR, which may be null for none. Only the trees of the
+     *  directories CHANGES touch are read and written. */
+    public static String apply(File objectDir, String root, Map<String, String> changes) {
+        String result = applyTo(objectDir, root, changes);
+        return result == null ? new Tree().save(objectDir) : result;
+    }
+
+    /** Returns the id of the tree ROOT of OBJECTDIR, which may be null,
+     *  with CHANGES applied, or null if that leaves it empty. */
+    private static String applyTo(File objectDir, String root, Map<String, String> changes) {
+        Tree tree = root == null ? new Tree() : read(objectDir, root).copy();
+        HashMap<String, Map<String, String>> inside = new HashMap<>();
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            String path = change.getKey();
+            int slash = path.indexOf('/');
+            if (slash >= 0) {
+                inside.computeIfAbsent(path.substring(0, slash), k -> new HashMap<>())
+                        .put(path.substring(slash + 1), change.getValue());
+            } else if (change.getValue() == null) {
+                tree.files.remove(path);
+            } else {
+                tree.files.put(path, change.getValue());
+                tree.dirs.remove(path);
+            }
+        }
+        for (Map.Entry<String, Map<String, String>> dir : inside.entrySet()) {
+            String id = applyTo(objectDir, tree.dirs.get(dir.getKey()), dir.getValue());
+            if (id == null) {
+                tree.dirs.remove(dir.getKey());
+            } else {
+                tree.dirs.put(dir.getKey(), id);
+                tree.files.remove(dir.getKey());
+            }
+        }
+        if (tree.files.isEmpty() && tree.dirs.isEmpty()) {
+            return null;
+        }
+        return tree.save(objectDir);
+    }
+
+    /** Returns every file under the tree ROOT of OBJECTDIR: path -> contents
+     *  id. */
+    public static HashMap<String, String> files(File objectDir, String root) {
+        HashMap<String, String> result = new HashMap<>();
+        addFiles(objectDir, root, "", result);
+        return result;
+    }
+
+    /** Returns the contents id of the file PATH under the tree ROOT of
+     *  OBJECTDIR, or null if there is none. Only the trees of the
+     *  directories on PATH are read. */
+    public static String lookup(File objectDir, String root, String path) {
+        String id = root;
+        int start = 0;
+        int slash = path.indexOf('/');
+        while (slash >= 0) {
+            id = read(objectDir, id).dirs.get(path.substring(start, slash));
+            if (id == null) {
+                return null;
+            }
+            start = slash + 1;
+            slash = path.indexOf('/', start);
+        }
+        return read(objectDir, id).files.get(path.substring(start));
+    }
+
+    /** Adds the files under the tree ID of OBJECTDIR to RESULT, their paths
+     *  starting with PREFIX. */
+    private static void addFiles(File objectDir, String id, String prefix,
+                                 Map<String, String> result) {
+        Tree tree = read(objectDir, id);
+        for (Map.Entry<String, String> file : tree.files.entrySet()) {
+            result.put(prefix + file.getKey(), file.getValue());
+        }
+        for (Map.Entry<String, String> dir : tree.dirs.entrySet()) {
+            addFiles(objectDir, dir.getValue(), prefix + dir.getKey() + "/", result);
+        }
+    }
+
+    /** Returns the paths of the files whose contents differ between the
+     *  trees BEFORE and AFTER of OBJECTDIR, either of which may be null for
+     *  none, including files only one has. Directories with the same id on
+     *  both sides are passed over without being read. */
+    public static Set<String> changed(File objectDir, String before, String after) {
+        Set<String> result = new HashSet<>();
+        addChanged(objectDir, before, after, "", result);
+        return result;
+    }
+
+    /** Adds the paths that differ between the trees BEFORE and AFTER of
+     *  OBJECTDIR to RESULT, starting with PREFIX. */
+    private static void addChanged(File objectDir, String before, String after,
+                                   String prefix, Set<String> result) {
+        if (before != null && before.equals(after)) {
+            return;
+        }
+        Tree old = before == null ? new Tree() : read(objectDir, before);
+        Tree now = after == null ? new Tree() : read(objectDir, after);
+        for (Map.Entry<String, String> file : now.files.entrySet()) {
+            if (!file.getValue().equals(old.files.get(file.getKey()))) {
+                result.add(prefix + file.getKey());
+            }
+        }
+        for (String name : old.files.keySet()) {
+            if (!now.files.containsKey(name)) {
+                result.add(prefix + name);
+            }
+        }
+        Set<String> names = new HashSet<>(old.dirs.keySet());
+        names.addAll(now.dirs.keySet());
+        for (String name : names) {
+            addChanged(objectDir, old.dirs.get(name), now.dirs.get(name),
+                    prefix + name + "/", result);
+        }
+    }
+
+    /** Copies the tree ROOT of FROMDIR, with its subtrees and the contents of
+     *  its files, to TODIR. A tree TODIR already has is complete there, as
+     *  a tree is copied only after everything under it, so it is skipped
+     *  whole. */
+    public static void copy(File fromDir, File toDir, String root) {
+        if (ObjectStore.contains(toDir, ObjectStore.TREE, root)) {
+            return;
+        }
+        Tree tree = read(fromDir, root);
+        for (String contents : tree.files.values()) {
+            ObjectStore.copy(fromDir, toDir, ObjectStore.CONTENTS, contents);
+        }
+        for (String dir : tree.dirs.values()) {
+            copy(fromDir, toDir, dir);
+        }
+        ObjectStore.copy(fromDir, toDir, ObjectStore.TREE, root);
+    }
+
+    /** Returns the tree ID of OBJECTDIR. */
+    private static Tree read(File objectDir, String id) {
+        synchronized (READ) {
+            Tree cached = READ.get(id);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        byte[] data = ObjectStore.read(objectDir, ObjectStore.TREE, id);
+        if (data == null) {
+            throw error("No tree %s.", id);
+        }
+        Codec.Reader in = new Codec.Reader(data);
+        Codec.checkVersion(in.readByte(), VERSION, "tree");
+        Tree tree = new Tree();
+        int count = in.readVarint();
+        for (int i = 0; i < count; i++) {
+            tree.files.put(in.readString(), in.readId());
+        }
+        count = in.readVarint();
+        for (int i = 0; i < count; i++) {
+            tree.dirs.put(in.readString(), in.readId());
+        }
+        synchronized (READ) {
+            READ.put(id, tree);
+        }
+        return tree;
+    }
+
+    /** Returns a tree with the same entries as this one, for changing. */
+    private Tree copy() {
+        Tree result = new Tree();
+        result.files.putAll(files);
+        result.dirs.putAll(dirs);
+        return result;
+    }
+
+    /** Returns the id of this tree, first storing it in OBJECTDIR unless that
+     *  is null. */
+    private String save(File objectDir) {
+        Codec.Writer out = new Codec.Writer();
+        out.writeByte(VERSION);
+        out.writeVarint(files.size());
+        for (Map.Entry<String, String> file : files.entrySet()) {
+            out.writeString(file.getKey());
+            out.writeId(file.getValue());
+        }
+        out.writeVarint(dirs.size());
+        for (Map.Entry<String, String> dir : dirs.entrySet()) {
+            out.writeString(dir.getKey());
+            out.writeId(dir.getValue());
+        }
+        byte[] encoded = out.toByteArray();
+        String id = sha1(encoded);
+        if (objectDir != null) {
+            ObjectStore.write(objectDir, ObjectStore.TREE, id, encoded);
+        }
+        return id;
+    }
+}
@@ -0,0 +1,157 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static gitlet.Utils.*;
+
+/** Lists the files of a working directory and every directory below it.
+ *  Each directory is read by a task of the common fork-join pool, whose
+ *  idle threads steal the tasks of the subdirectories found, so a wide
+ *  tree is read by every core. Directories the .gitletignore rules ignore,
+ *  and .gitlet, are never opened, so a build directory of any size costs
+ *  one test. The paths are yielded as a stream while the walk goes on.
+ *
+ *  @author Jeffrey Huang
+ */
+public class WorktreeScanner {
+
+    /** Marks the end of the paths in a queue; no path is empty. */
+    private static final String END = "";
+
+    /** The directory scanned. */
+    private final File root;
+
+    /** The rules of its .gitletignore. */
+    private final IgnoreRules rules;
+
+    /** Paths found and not yet taken, then END. */
+    private final LinkedBlockingQueue<String> found = new LinkedBlockingQueue<>();
+
+    /** The error that stopped the walk, or null. */
+    private volatile RuntimeException failure;
+
+    /** A scanner of ROOT. */
+    private WorktreeScanner(File root) {
+        this.root = root;
+        this.rules = IgnoreRules.load(root);
+    }
+
+    /** Returns the paths, relative to ROOT with / between names, of the
+     *  files in ROOT and below it that are not ignored, in no order. */
+    public static Stream<String> scan(File root) {
+        WorktreeScanner scanner = new WorktreeScanner(root);
+        ForkJoinPool.commonPool().execute(() -> {
+            try {
+                new Walk(scanner, root.toPath(), "").invoke();
+            } catch (RuntimeException e) {
+                scanner.failure = e;
+            } finally {
+                scanner.found.add(END);
+            }
+        });
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(
+                scanner.paths(), Spliterator.NONNULL | Spliterator.DISTINCT), false);
+    }
+
+    /** Returns the paths scan yields for ROOT, sorted. */
+    public static List<String> files(File root) {
+        try (Stream<String> paths = scan(root)) {
+            return paths.sorted().collect(Collectors.toList());
+        }
+    }
+
+    /** Returns the paths as they are found, waiting for the walk as need
+     *  be; if the walk failed, its error is thrown at the end. */
+    private Iterator<String> paths() {
+        return new Iterator<String>() {
+            private String next;
+
+            @Override
+            public boolean hasNext() {
+                if (next == null) {
+                    try {
+                        next = found.take();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw error("Interrupted while listing %s.", root);
+                    }
+                }
+                if (next.equals(END) && failure != null) {
+                    throw failure;
+                }
+                return !next.equals(END);
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                String result = next;
+                next = null;
+                return result;
+            }
+        };
+    }
+
+    /** The task that reads one directory and forks one per subdirectory. */
+    private static class Walk extends RecursiveAction {
+
+        /** Version of the serialized form, which RecursiveAction requires. */
+        private static final long serialVersionUID = 1L;
+
+        /** The scanner whose queue takes the paths. */
+        private final WorktreeScanner scanner;
+
+        /** The directory read. */
+        private final Path dir;
+
+        /** Its path relative to the root, ending in / unless empty. */
+        private final String prefix;
+
+        /** A task reading DIR, whose relative path is PREFIX, for SCANNER. */
+        Walk(WorktreeScanner scanner, Path dir, String prefix) {
+            this.scanner = scanner;
+            this.dir = dir;
+            this.prefix = prefix;
+        }
+
+        @Override
+        protected void compute() {
+            List<Walk> subdirs = new ArrayList<>();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+                for (Path entry : entries) {
+                    String path = prefix + entry.getFileName();
+                    if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                        if (!entry.getFileName().toString().equals(".gitlet")
+                                && !scanner.rules.ignored(path, true)) {
+                            subdirs.add(new Walk(scanner, entry, path + "/"));
+                        }
+                    } else if (Files.isRegularFile(entry) && !scanner.rules.ignored(path, false)) {
+                        scanner.found.add(path);
+                    }
+                }
+            } catch (IOException e) {
+                throw error("Cannot list %s: %s", dir, e.getMessage());
+            }
+            invokeAll(subdirs);
+        }
+    }
+}